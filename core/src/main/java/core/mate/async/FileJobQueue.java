@@ -0,0 +1,722 @@
+package core.mate.async;
+
+import android.support.annotation.IntDef;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import core.mate.content.FileMover;
+import core.mate.util.AbsFileAppender;
+import core.mate.util.FileUtil;
+import core.mate.util.LogUtil;
+
+/**
+ * 文件操作的任务队列。
+ * <p>
+ * 复制、移动和删除作为任务加入队列之后，由队列专属的{@link IOExecutor}按照优先级依次执行，
+ * 同时执行的任务数不超过构造时指定的并发数，因而大量的文件操作不会无节制地与应用的其他IO争抢资源。
+ * 任务的冲突处理与{@link FileUtil}中对应的方法完全一致。
+ * <p>
+ * 暂停和取消都在文件的边界上生效：正在写入的文件会写完，之后的文件不再处理。
+ * 暂停时正在执行的任务会让出工作线程并回到队列之中，恢复之后从中断的位置继续。
+ * 所有的回调都发生在工作线程中。
+ *
+ * @author DrkCore
+ * @since 2017年2月15日10:21:37
+ */
+public class FileJobQueue {
+
+    public static final int TYPE_COPY = 0;
+    public static final int TYPE_MOVE = 1;
+    public static final int TYPE_DELETE = 2;
+
+    @IntDef({TYPE_COPY, TYPE_MOVE, TYPE_DELETE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface JobType {
+    }
+
+    public static final int STATE_PENDING = 0;
+    public static final int STATE_RUNNING = 1;
+    public static final int STATE_SUCCEED = 2;
+    public static final int STATE_FAILED = 3;
+    public static final int STATE_CANCELLED = 4;
+
+    @IntDef({STATE_PENDING, STATE_RUNNING, STATE_SUCCEED, STATE_FAILED, STATE_CANCELLED})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface JobState {
+    }
+
+    /**
+     * 任务的优先级，数值越大越先执行，相同优先级的任务按照加入的顺序执行
+     */
+    public static final int PRIORITY_LOW = -1;
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_HIGH = 1;
+
+    private final IOExecutor executor;
+    private final PriorityBlockingQueue<Job> pendingJobs = new PriorityBlockingQueue<>();
+    private final Set<Job> runningJobs = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    /**
+     * 保证任务从等待队列转移到执行集合的过程对{@link #cancelAll()}是原子的
+     */
+    private final Object jobLock = new Object();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 默认同一时间只执行一个任务
+     */
+    public FileJobQueue() {
+        this(1);
+    }
+
+    /**
+     * @param parallelism 同时执行的任务数的上限
+     */
+    public FileJobQueue(int parallelism) {
+        this.executor = new IOExecutor(parallelism);
+    }
+
+	/* 加入任务 */
+
+    /**
+     * 复制项目，冲突处理请参阅{@link FileUtil#copy(File, File[], int, AbsFileAppender)}。
+     * 任务完成后{@link Job#getResult()}返回与items一一对应的复制结果。
+     * <p>
+     * 取消时已经写入的文件会被保留，而尚未写入的空的目标文件会被删除。
+     *
+     * @param dstDir
+     * @param items
+     * @param operation
+     * @param appender
+     * @param priority
+     * @param listener  可以为null
+     * @return
+     */
+    public Job copy(File dstDir, File[] items, @FileUtil.ConflictOperation int operation, AbsFileAppender appender,
+                    int priority, @Nullable OnJobListener listener) {
+        return enqueue(new Job(TYPE_COPY, dstDir, items, operation, appender, priority, listener));
+    }
+
+    /**
+     * 移动项目，冲突处理请参阅{@link FileUtil#moveEx(File, File[], int, AbsFileAppender)}。
+     * 无法直接重命名的项目通过{@link FileUtil#planMove(File, File, int, AbsFileAppender)}逐个文件地移动，
+     * 同样可以在文件的边界上取消，此时当前项目中已经移动的文件会被移回原处。
+     *
+     * @param dstDir
+     * @param items
+     * @param operation
+     * @param appender
+     * @param priority
+     * @param listener  可以为null
+     * @return
+     */
+    public Job move(File dstDir, File[] items, @FileUtil.ConflictOperation int operation, AbsFileAppender appender,
+                    int priority, @Nullable OnJobListener listener) {
+        return enqueue(new Job(TYPE_MOVE, dstDir, items, operation, appender, priority, listener));
+    }
+
+    /**
+     * 删除项目。某个项目删除失败并不会终止任务，失败的项目可以通过{@link Job#getFailedItems()}获取，
+     * 此时任务的状态为{@link #STATE_FAILED}。
+     *
+     * @param priority
+     * @param listener 可以为null
+     * @param items
+     * @return
+     */
+    public Job delete(int priority, @Nullable OnJobListener listener, File... items) {
+        return enqueue(new Job(TYPE_DELETE, null, items, FileUtil.CONFLICT_OPERATION_TERMINATE, null, priority, listener));
+    }
+
+    private Job enqueue(Job job) {
+        if (executor.isShutdown()) {
+            throw new IllegalStateException("队列已关闭");
+        }
+        pendingJobs.offer(job);
+        try {
+            executor.execute(scheduler);
+        } catch (RejectedExecutionException e) {// 与shutdown并发
+            pendingJobs.remove(job);
+            throw new IllegalStateException("队列已关闭");
+        }
+        return job;
+    }
+
+	/* 队列控制 */
+
+    private final Object pauseLock = new Object();
+    private boolean paused;
+
+    /**
+     * 每个等待中的任务对应一次调度，具体执行哪个任务由优先级决定。
+     * 暂停时不会取出任务，恢复时会为所有等待中的任务重新调度。
+     */
+    private final Runnable scheduler = () -> {
+        Job next;
+        synchronized (pauseLock) {
+            if (paused) {
+                return;
+            }
+            synchronized (jobLock) {// 取出的任务立刻登记为执行中，以免cancelAll看不到
+                next = pendingJobs.poll();
+                if (next != null) {
+                    runningJobs.add(next);
+                }
+            }
+        }
+        if (next != null) {
+            next.run();
+        }
+    };
+
+    /**
+     * 暂停队列。正在执行的任务在处理完当前文件后回到队列之中，不会占用工作线程；尚未开始的任务不会开始。
+     */
+    public void pause() {
+        synchronized (pauseLock) {
+            paused = true;
+        }
+    }
+
+    public void resume() {
+        int count;
+        synchronized (pauseLock) {
+            if (!paused) {
+                return;
+            }
+            paused = false;
+            count = pendingJobs.size();
+        }
+        try {
+            for (int i = 0; i < count; i++) {
+                executor.execute(scheduler);
+            }
+        } catch (RejectedExecutionException e) {// 队列已经关闭，剩余的任务都已被取消
+            LogUtil.e(e);
+        }
+    }
+
+    public boolean isPaused() {
+        synchronized (pauseLock) {
+            return paused;
+        }
+    }
+
+    /**
+     * 将因暂停而停下的任务放回等待队列
+     *
+     * @param job
+     * @return 队列已经恢复时返回false，此时任务应当继续执行
+     */
+    private boolean requeue(Job job) {
+        synchronized (pauseLock) {
+            if (!paused) {
+                return false;
+            }
+            synchronized (jobLock) {
+                runningJobs.remove(job);
+                pendingJobs.offer(job);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return 等待执行的任务数
+     */
+    public int getPendingCount() {
+        return pendingJobs.size();
+    }
+
+    /**
+     * @return 正在执行的任务数
+     */
+    public int getRunningCount() {
+        return runningJobs.size();
+    }
+
+    /**
+     * 取消所有等待中和执行中的任务
+     */
+    public void cancelAll() {
+        Job[] pending, running;
+        synchronized (jobLock) {
+            pending = pendingJobs.toArray(new Job[0]);
+            running = runningJobs.toArray(new Job[0]);
+        }
+        // 等待中的任务由cancel从队列中移除并立刻结束，执行中的任务在检查点结束
+        for (Job job : pending) {
+            job.cancel();
+        }
+        for (Job job : running) {
+            job.cancel();
+        }
+    }
+
+    /**
+     * 取消所有任务并关闭队列，之后无法再加入任务。
+     * 已经开始并因暂停而回到队列中的任务会在当前线程中完成取消时的清理。
+     */
+    public void shutdown() {
+        executor.shutdown();
+        cancelAll();
+    }
+
+	/* 进度 */
+
+    private final AtomicLong totalItemCount = new AtomicLong();
+    private final AtomicLong totalByteCount = new AtomicLong();
+    private volatile FileUtil.OnProgressListener progressListener;
+
+    /**
+     * 设置整个队列的进度回调，回调的数值是所有任务累计处理的项目数和字节数
+     *
+     * @param progressListener
+     */
+    public void setOnProgressListener(@Nullable FileUtil.OnProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public long getTotalItemCount() {
+        return totalItemCount.get();
+    }
+
+    public long getTotalByteCount() {
+        return totalByteCount.get();
+    }
+
+	/* 任务 */
+
+    public interface OnJobListener {
+
+        /**
+         * @param job
+         * @param itemCount 该任务已经处理的项目数
+         * @param byteCount 该任务已经写入或删除的字节数
+         */
+        void onProgress(Job job, long itemCount, long byteCount);
+
+        /**
+         * 任务成功、失败或者被取消之后回调
+         *
+         * @param job
+         */
+        void onDone(Job job);
+    }
+
+    public class Job implements Comparable<Job> {
+
+        @JobType
+        private final int type;
+        private final File dstDir;
+        private final File[] items;
+        @FileUtil.ConflictOperation
+        private final int operation;
+        private final AbsFileAppender appender;
+        private final int priority;
+        private final long seq;
+        private final OnJobListener listener;
+
+        private final AtomicLong itemCount = new AtomicLong();
+        private final AtomicLong byteCount = new AtomicLong();
+        private final List<File> failedItems = new ArrayList<>();
+        private final CountDownLatch doneLatch = new CountDownLatch(1);
+
+        @JobState
+        private volatile int state = STATE_PENDING;
+        private volatile boolean cancelled;
+        private volatile File[] result;
+        private volatile Throwable error;
+
+        // 以下字段记录执行的进度，任务因暂停回到队列之后从这里继续，只在执行任务的线程中访问
+        private boolean started;
+        private boolean suspended;
+        private int itemIndex;
+        private List<File[]> transfers;
+        private int transferIndex;
+        private FileMover mover;
+        private List<File> dirs;
+        private File[] subItems;
+        private int dirIndex;
+        private int subIndex;
+
+        private Job(@JobType int type, File dstDir, File[] items, @FileUtil.ConflictOperation int operation, AbsFileAppender appender,
+                    int priority, OnJobListener listener) {
+            this.type = type;
+            this.dstDir = dstDir;
+            this.items = items;
+            this.operation = operation;
+            this.appender = appender;
+            this.priority = priority;
+            this.seq = sequence.getAndIncrement();
+            this.listener = listener;
+        }
+
+        @Override
+        public int compareTo(Job another) {
+            if (priority != another.priority) {
+                return priority > another.priority ? -1 : 1;
+            }
+            return seq < another.seq ? -1 : (seq == another.seq ? 0 : 1);
+        }
+
+		/* 执行 */
+
+        private void run() {
+            boolean requeued = false;
+            try {
+                if (!started && cancelled) {
+                    finish(STATE_CANCELLED, null);
+                    return;
+                }
+
+                started = true;
+                state = STATE_RUNNING;
+                while (true) {
+                    suspended = false;
+                    switch (type) {
+                        case TYPE_COPY:
+                            doCopy();
+                            break;
+
+                        case TYPE_MOVE:
+                            doMove();
+                            break;
+
+                        case TYPE_DELETE:
+                            doDelete();
+                            break;
+
+                        default:
+                            throw new IllegalArgumentException("任务类型不合法");
+                    }
+                    if (!suspended || cancelled) {
+                        break;
+                    } else if (requeue(this)) {// 让出工作线程，恢复后从当前进度继续
+                        requeued = true;
+                        return;
+                    }
+                }
+
+                if (cancelled) {
+                    rollback();
+                    finish(STATE_CANCELLED, null);
+                } else if (!failedItems.isEmpty()) {
+                    finish(STATE_FAILED, new IOException(failedItems.size() + "个项目删除失败"));
+                } else {
+                    finish(STATE_SUCCEED, null);
+                }
+            } catch (Exception e) {
+                LogUtil.e(e);
+                finish(STATE_FAILED, e);
+            } finally {
+                if (!requeued) {
+                    runningJobs.remove(this);
+                }
+            }
+        }
+
+        /**
+         * 在文件的边界上检查任务能否继续执行
+         *
+         * @return 任务被取消或者队列被暂停时返回false
+         */
+        private boolean checkpoint() {
+            if (cancelled) {
+                return false;
+            }
+            synchronized (pauseLock) {
+                suspended = paused;
+            }
+            return !suspended;
+        }
+
+        /**
+         * 任务被取消时撤销尚未完成的部分
+         */
+        private void rollback() {
+            if (transfers != null) {// 删除本任务新建但尚未写入的目标文件，被覆盖的已有文件保持不变
+                File created;
+                for (int i = transferIndex, len = transfers.size(); i < len; i++) {
+                    created = transfers.get(i)[2];
+                    if (created != null) {
+                        created.delete();
+                    }
+                }
+                transfers = null;
+            }
+            if (mover != null) {// 当前项目中已经移动的文件移回原处
+                mover.rollback();
+                result[itemIndex] = null;
+                mover = null;
+            }
+        }
+
+        private void doCopy() throws IOException {
+            if (transfers == null) {
+                transfers = new ArrayList<>();
+                result = FileUtil.planCopy(dstDir, items, operation, appender, transfers);
+            }
+            for (int len = transfers.size(); transferIndex < len; transferIndex++) {
+                if (!checkpoint()) {
+                    return;
+                }
+                File[] transfer = transfers.get(transferIndex);
+                onProgress(1, FileUtil.transferFile(transfer[0], transfer[1]));
+            }
+        }
+
+        private void doMove() throws IOException {
+            if (result == null) {
+                result = new File[items.length];
+            }
+            if (appender != null) {
+                appender.beginBatch();
+            }
+            try {
+                for (int len = items.length; itemIndex < len; itemIndex++) {
+                    if (mover == null) {
+                        if (!checkpoint()) {
+                            return;
+                        }
+                        mover = FileUtil.planMove(dstDir, items[itemIndex], operation, appender);
+                        if (mover == null) {// 被跳过
+                            continue;
+                        }
+                        result[itemIndex] = mover.getTargetItem();
+                        if (mover.getFileCount() == 0) {// 直接重命名成功，或者是空目录
+                            onProgress(1, 0);
+                        }
+                    }
+
+                    while (mover.hasNext()) {
+                        if (!checkpoint()) {
+                            return;
+                        }
+                        try {
+                            onProgress(1, mover.moveNext());
+                        } catch (IOException e) {
+                            mover.rollback();
+                            result[itemIndex] = null;
+                            mover = null;
+                            throw e;
+                        }
+                    }
+                    mover.finish();
+                    mover = null;
+                }
+            } finally {
+                if (appender != null) {
+                    appender.endBatch();
+                }
+            }
+        }
+
+        private void doDelete() {
+            // dirs同时作为遍历的队列，遍历结束后即是所有目录的先序排列
+            if (dirs == null) {
+                dirs = new ArrayList<>();
+            }
+            File item;
+            for (int len = items.length; itemIndex < len; itemIndex++) {
+                item = items[itemIndex];
+                if (item.isDirectory()) {
+                    dirs.add(item);
+                } else if (!deleteItem(item, item.length())) {
+                    return;
+                }
+            }
+
+            for (; dirIndex < dirs.size(); dirIndex++) {
+                if (subItems == null) {
+                    subItems = dirs.get(dirIndex).listFiles();
+                    subItems = subItems != null ? subItems : new File[0];
+                    subIndex = 0;
+                }
+                for (int len = subItems.length; subIndex < len; subIndex++) {
+                    item = subItems[subIndex];
+                    if (item.isDirectory()) {
+                        dirs.add(item);
+                    } else if (!deleteItem(item, item.length())) {
+                        return;
+                    }
+                }
+                subItems = null;
+            }
+
+            // 子目录总是排在上级目录之后，逆序删除即可保证自底向上
+            while (!dirs.isEmpty()) {
+                if (!deleteItem(dirs.get(dirs.size() - 1), 0)) {
+                    return;
+                }
+                dirs.remove(dirs.size() - 1);
+            }
+        }
+
+        /**
+         * @return 被取消或者暂停时返回false，此时项目没有被处理
+         */
+        private boolean deleteItem(File item, long length) {
+            if (!checkpoint()) {
+                return false;
+            }
+            if (item.delete()) {
+                onProgress(1, length);
+            } else {
+                synchronized (failedItems) {
+                    failedItems.add(item);
+                }
+            }
+            return true;
+        }
+
+        private void onProgress(long items, long bytes) {
+            long jobItems = itemCount.addAndGet(items);
+            long jobBytes = byteCount.addAndGet(bytes);
+            long queueItems = totalItemCount.addAndGet(items);
+            long queueBytes = totalByteCount.addAndGet(bytes);
+
+            if (listener != null) {
+                listener.onProgress(this, jobItems, jobBytes);
+            }
+            FileUtil.OnProgressListener progressListener = FileJobQueue.this.progressListener;
+            if (progressListener != null) {
+                progressListener.onProgress(queueItems, queueBytes);
+            }
+        }
+
+        private void finish(@JobState int state, @Nullable Throwable error) {
+            runningJobs.remove(this);// 先移除，使回调和等待者看到的执行数已经更新
+            this.error = error;
+            this.state = state;
+            doneLatch.countDown();
+            if (listener != null) {
+                listener.onDone(this);
+            }
+        }
+
+		/* 外部接口 */
+
+        /**
+         * 取消任务。尚未开始的任务会立刻结束，执行中的任务在处理完当前文件之后结束，
+         * 因暂停而回到队列中的任务会由工作线程清理之后结束。
+         *
+         * @return 任务已经结束时返回false
+         */
+        public boolean cancel() {
+            if (isDone() || cancelled) {
+                return false;
+            }
+            cancelled = true;
+            boolean removed;
+            synchronized (jobLock) {
+                removed = pendingJobs.remove(this);
+                if (removed && started) {// 因暂停回到队列中的任务，交给工作线程完成清理
+                    runningJobs.add(this);
+                }
+            }
+            if (removed && !started) {
+                finish(STATE_CANCELLED, null);
+            } else if (removed) {
+                try {
+                    executor.execute(this::run);
+                } catch (RejectedExecutionException e) {// 队列已经关闭
+                    run();
+                }
+            }
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isDone() {
+            return doneLatch.getCount() == 0;
+        }
+
+        /**
+         * 阻塞直到任务结束
+         *
+         * @throws InterruptedException
+         */
+        public void await() throws InterruptedException {
+            doneLatch.await();
+        }
+
+        /**
+         * @return 超时之前任务已经结束则返回true
+         * @throws InterruptedException
+         */
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            return doneLatch.await(timeout, unit);
+        }
+
+        @JobType
+        public int getType() {
+            return type;
+        }
+
+        @JobState
+        public int getState() {
+            return state;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        /**
+         * @return 复制和移动任务与items一一对应的目标项目，被跳过或者尚未处理的项目为null。
+         * 删除任务返回null。
+         */
+        @Nullable
+        public File[] getResult() {
+            return result;
+        }
+
+        /**
+         * @return 任务失败的原因
+         */
+        @Nullable
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * @return 删除任务中删除失败的项目
+         */
+        public List<File> getFailedItems() {
+            synchronized (failedItems) {
+                return new ArrayList<>(failedItems);
+            }
+        }
+
+        /**
+         * @return 已经处理的项目数。复制的文件、直接重命名的项目以及删除的文件和目录各计为一项。
+         */
+        public long getItemCount() {
+            return itemCount.get();
+        }
+
+        /**
+         * @return 已经写入或删除的字节数，直接重命名的项目不计入
+         */
+        public long getByteCount() {
+            return byteCount.get();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package core.mate.async;
+
+import android.os.Process;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 线程数有上限的IO线程池，用于并发执行文件的复制、删除等操作。
+ * 线程以后台优先级运行，空闲一段时间后会自动退出。
+ * 一次性的并发操作请使用{@link #getShared()}共用的实例，以免每次都要创建和销毁线程。
+ *
+ * @author DrkCore
+ * @since 2017年2月12日14:06:21
+ */
+public class IOExecutor extends ThreadPoolExecutor {
+
+    /**
+     * 默认的并发数。IO操作受限于存储带宽，过多的线程并不会带来收益。
+     */
+    public static int getDefaultParallelism() {
+        return Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+    private static volatile IOExecutor sharedExecutor;
+
+    /**
+     * 获取全局共用的线程池，首次调用时才会创建。
+     * 线程数为默认并发数与CPU核数中较大的一个，空闲的线程会自动退出，因而不需要也不允许关闭。
+     * 单次操作的并发数请通过{@link #runAll(List, int)}限制。
+     *
+     * @return
+     */
+    public static IOExecutor getShared() {
+        if (sharedExecutor == null) {
+            synchronized (IOExecutor.class) {
+                if (sharedExecutor == null) {
+                    sharedExecutor = new IOExecutor(Math.max(getDefaultParallelism(), Runtime.getRuntime().availableProcessors())) {
+
+                        @Override
+                        public void shutdown() {
+                            throw new UnsupportedOperationException("共用的线程池不允许关闭");
+                        }
+
+                        @Override
+                        public List<Runnable> shutdownNow() {
+                            throw new UnsupportedOperationException("共用的线程池不允许关闭");
+                        }
+                    };
+                }
+            }
+        }
+        return sharedExecutor;
+    }
+
+    public IOExecutor() {
+        this(getDefaultParallelism());
+    }
+
+    public IOExecutor(int parallelism) {
+        super(parallelism, parallelism, 10L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new IOThreadFactory());
+        allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 执行所有任务并按照提交顺序返回结果，所有任务同时提交。
+     *
+     * @see #runAll(List, int)
+     */
+    public <T> List<T> runAll(List<? extends Callable<T>> tasks) throws IOException {
+        return runAll(tasks, tasks.size());
+    }
+
+    /**
+     * 执行所有任务并按照提交顺序返回结果，同一时间最多只有parallelism个任务在线程池中执行，其余的任务排队等待。
+     * 任意任务抛出异常时会取消剩余的任务，等待已经开始的任务退出之后再将该异常重新抛出。
+     * <p>
+     * 在该线程池自身的线程中调用时，任务会在当前线程中依次执行，以免嵌套的任务占满线程池之后互相等待。
+     *
+     * @param tasks
+     * @param parallelism 同时执行的任务数的上限，小于等于1时在当前线程中依次执行
+     * @param <T>
+     * @return
+     * @throws IOException 任务抛出的IO异常，或者等待过程中线程被中断
+     */
+    public <T> List<T> runAll(List<? extends Callable<T>> tasks, int parallelism) throws IOException {
+        int len = tasks.size();
+        if (parallelism <= 1 || len <= 1 || isWorkerThread()) {
+            List<T> results = new ArrayList<>(len);
+            for (Callable<T> task : tasks) {
+                results.add(callInline(task));
+            }
+            return results;
+        }
+
+        Batch<T> batch = new Batch<>(tasks);
+        boolean succeed = false;
+        try {
+            batch.start(Math.min(parallelism, len));
+            for (int i = 0; i < len; i++) {// 按照完成的顺序检查，尽早发现异常
+                batch.completed.take().get();
+            }
+
+            List<T> results = new ArrayList<>(len);
+            for (Future<T> future : batch.futures) {
+                results.add(future.get());
+            }
+            succeed = true;
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待IO任务时线程被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } catch (CancellationException e) {
+            throw new IOException("IO任务被取消");
+        } finally {
+            if (!succeed) {
+                batch.cancel();
+            }
+        }
+    }
+
+    private static <T> T callInline(Callable<T> task) throws IOException {
+        try {
+            return task.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @return 当前线程是否是该线程池的工作线程
+     */
+    private boolean isWorkerThread() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof IOThread && ((IOThread) thread).factory == getThreadFactory();
+    }
+
+    /**
+     * 一次{@link #runAll(List, int)}调用中的任务，负责限制并发数以及在取消时等待已经开始的任务退出
+     */
+    private final class Batch<T> {
+
+        final List<BatchTask> futures;
+        final BlockingQueue<Future<T>> completed = new LinkedBlockingQueue<>();
+
+        // 以下字段由Batch自身的锁保护
+        private int next;
+        private int running;
+        private boolean cancelled;
+
+        Batch(List<? extends Callable<T>> tasks) {
+            futures = new ArrayList<>(tasks.size());
+            for (Callable<T> task : tasks) {
+                futures.add(new BatchTask(task));
+            }
+        }
+
+        void start(int parallelism) {
+            synchronized (this) {
+                next = parallelism;
+                running = parallelism;
+            }
+            for (int i = 0; i < parallelism; i++) {
+                execute(futures.get(i));
+            }
+        }
+
+        void onTaskExit() {
+            BatchTask nextTask = null;
+            synchronized (this) {
+                running--;
+                if (!cancelled && next < futures.size()) {
+                    nextTask = futures.get(next++);
+                    running++;
+                }
+                notifyAll();
+            }
+            if (nextTask != null) {
+                execute(nextTask);
+            }
+        }
+
+        /**
+         * 取消所有任务，并等待已经开始执行的任务退出
+         */
+        void cancel() {
+            int submitted;
+            synchronized (this) {
+                cancelled = true;
+                submitted = next;
+            }
+            for (BatchTask task : futures) {
+                task.cancel(true);
+            }
+            for (int i = 0; i < submitted; i++) {
+                if (remove(futures.get(i))) {// 尚在线程池的队列中，不会再被执行
+                    synchronized (this) {
+                        running--;
+                    }
+                }
+            }
+
+            boolean interrupted = false;
+            synchronized (this) {
+                while (running > 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private final class BatchTask extends FutureTask<T> {
+
+            BatchTask(Callable<T> callable) {
+                super(callable);
+            }
+
+            @Override
+            public void run() {
+                try {
+                    super.run();
+                } finally {
+                    onTaskExit();
+                }
+            }
+
+            @Override
+            protected void done() {
+                completed.add(this);
+            }
+        }
+    }
+
+	/* 线程 */
+
+    private static class IOThreadFactory implements ThreadFactory {
+
+        private final int poolId = POOL_COUNT.incrementAndGet();
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new IOThread(this, () -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, "IOExecutor-" + poolId + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static class IOThread extends Thread {
+
+        private final ThreadFactory factory;
+
+        IOThread(ThreadFactory factory, Runnable target, String name) {
+            super(target, name);
+            this.factory = factory;
+        }
+    }
+}
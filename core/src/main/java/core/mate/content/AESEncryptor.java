@@ -1,20 +1,33 @@
 package core.mate.content;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import core.mate.util.EncodeUtil;
 import core.mate.util.EncryptUtil;
 import core.mate.util.LogUtil;
 
 /**
+ * 使用AES加解密的加密器。密码只在构造时编码一次，派生的密钥和{@link javax.crypto.Cipher}由{@link AESEngine}缓存。
+ *
  * @author DrkCore
  * @since 2016年2月24日22:40:31
  */
 public class AESEncryptor extends AbsEncryptor {
 
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
 	private final String mode;
 	private final String padding;
-	private final String psd;
+	private final byte[] psd;
 	private final Charset charset;
+	private final AESEngine engine;
 
 	public AESEncryptor (String psd) {
 		this(psd, null);
@@ -25,11 +38,19 @@ public class AESEncryptor extends AbsEncryptor {
 	}
 
 	public AESEncryptor (@EncryptUtil.AESMode String mode, @EncryptUtil.AESPadding String padding, String psd, Charset charset, String salt) {
+		this(mode, padding, psd, charset, salt, AESEngine.getDefault());
+	}
+
+	/**
+	 * @param engine 用于缓存密钥的引擎，需要与全局的缓存隔离时使用
+	 */
+	public AESEncryptor (@EncryptUtil.AESMode String mode, @EncryptUtil.AESPadding String padding, String psd, Charset charset, String salt, AESEngine engine) {
 		super(salt);
 		this.mode = mode;
 		this.padding = padding;
 		this.charset = charset;
-		this.psd = psd;
+		this.psd = psd.getBytes(charset);
+		this.engine = engine;
 	}
 
 	/*实现*/
@@ -37,7 +58,7 @@ public class AESEncryptor extends AbsEncryptor {
 	@Override
 	protected final String doEncrypt (String src) {
 		try {
-			return EncryptUtil.encryptAES(mode, padding, src, psd, charset);
+			return EncodeUtil.toHexString(engine.encrypt(mode, padding, src.getBytes(charset), psd));
 		} catch (Exception e) {
 			LogUtil.e(e);
 			throw new IllegalStateException();
@@ -47,10 +68,125 @@ public class AESEncryptor extends AbsEncryptor {
 	@Override
 	protected final String doDecrypt (String cipher) {
 		try {
-			return EncryptUtil.decryptAES(mode, padding, cipher, psd, charset);
+			return new String(engine.decrypt(mode, padding, EncodeUtil.toBytes(cipher), psd), UTF_8);
+		} catch (Exception e) {
+			LogUtil.e(e);
+			throw new IllegalStateException();
+		}
+	}
+
+	/*批量*/
+
+	/**
+	 * 整批数据只获取一次密钥和{@link Cipher}，并复用编码和加密的缓冲区。
+	 * 除ECB外的模式每项都会重新初始化以生成新的IV，与逐个加密的行为一致
+	 */
+	@Override
+	protected void doEncryptBatch (String[] values, String[] result, int from, int to) {
+		try {
+			SecretKeySpec key = engine.getKey(psd);
+			Cipher cipher = initCipher(Cipher.ENCRYPT_MODE, key);
+			boolean reinit = needsReinit();
+			// 与String.getBytes(Charset)一样替换无法编码的字符
+			CharsetEncoder encoder = charset.newEncoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			byte[] input = new byte[256];
+			byte[] output = new byte[256];
+			char[] hex = new char[512];
+			String value;
+			int len;
+			for (int i = from; i < to; i++) {
+				value = values[i];
+				if (value == null) {// 与逐个处理时的行为保持一致
+					result[i] = doEncrypt(null);
+					continue;
+				}
+
+				len = (int) Math.ceil(value.length() * (double) encoder.maxBytesPerChar());
+				if (input.length < len) {
+					input = new byte[len];
+				}
+				ByteBuffer buffer = ByteBuffer.wrap(input);
+				encoder.reset();
+				encoder.encode(CharBuffer.wrap(value), buffer, true);
+				encoder.flush(buffer);
+
+				if (reinit && i > from) {// 复用IV会泄露明文，CTR等模式下更会复用密钥流
+					cipher.init(Cipher.ENCRYPT_MODE, key);
+				}
+				len = cipher.getOutputSize(buffer.position());
+				if (output.length < len) {
+					output = new byte[len];
+				}
+				len = cipher.doFinal(input, 0, buffer.position(), output, 0);// 完成后cipher会回到初始化之后的状态
+
+				if (hex.length < len * 2) {
+					hex = new char[len * 2];
+				}
+				result[i] = new String(hex, 0, EncodeUtil.encodeHex(output, 0, len, hex, 0, false));
+			}
+		} catch (Exception e) {
+			LogUtil.e(e);
+			throw new IllegalStateException();
+		}
+	}
+
+	/**
+	 * 整批数据只获取一次密钥和{@link Cipher}，并复用解码和解密的缓冲区。
+	 * 除ECB外的模式每项都会重新初始化，与逐个解密的行为一致
+	 */
+	@Override
+	protected void doDecryptBatch (String[] values, String[] result, int from, int to) {
+		try {
+			SecretKeySpec key = engine.getKey(psd);
+			Cipher cipher = initCipher(Cipher.DECRYPT_MODE, key);
+			boolean reinit = needsReinit();
+			byte[] input = new byte[256];
+			byte[] output = new byte[256];
+			String value;
+			int len;
+			for (int i = from; i < to; i++) {
+				value = values[i];
+				if (value == null || value.isEmpty()) {// 与逐个处理时的行为保持一致
+					result[i] = doDecrypt(value);
+					continue;
+				}
+
+				len = value.length() / 2;
+				if (input.length < len) {
+					input = new byte[len];
+				}
+				if (EncodeUtil.decodeHex(value, 0, len * 2, input, 0) == -1) {
+					throw new NumberFormatException("不是合法的十六进制字符串：" + value);
+				}
+
+				if (reinit && i > from) {
+					cipher.init(Cipher.DECRYPT_MODE, key);
+				}
+				int outputSize = cipher.getOutputSize(len);
+				if (output.length < outputSize) {
+					output = new byte[outputSize];
+				}
+				len = cipher.doFinal(input, 0, len, output, 0);
+				result[i] = new String(output, 0, len, UTF_8);
+			}
 		} catch (Exception e) {
 			LogUtil.e(e);
 			throw new IllegalStateException();
 		}
 	}
+
+	/**
+	 * @return 除ECB外的模式都带有IV，同一次初始化不能用于多项数据
+	 */
+	private boolean needsReinit () {
+		return !EncryptUtil.AES_MODE_ECB.equals(mode);
+	}
+
+	private Cipher initCipher (int opmode, SecretKeySpec key) throws Exception {
+		Cipher cipher = AESEngine.getLocalCipher(mode, padding);
+		cipher.init(opmode, key);
+		return cipher;
+	}
 }
@@ -0,0 +1,196 @@
+package core.mate.content;
+
+import android.util.LruCache;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import core.mate.util.EncodeUtil;
+
+import core.mate.util.DigestUtil;
+import core.mate.util.EncryptUtil;
+
+/**
+ * 可以复用的AES加解密引擎。
+ * <p>
+ * 从密码派生密钥需要初始化{@link java.security.SecureRandom}和{@link javax.crypto.KeyGenerator}，
+ * 开销远大于加密一段短文本，因而派生出的密钥以密码的摘要为键缓存在有上限的LRU缓存中。
+ * {@link Cipher}则按照“AES/模式/填充”在每个线程中各自缓存一个实例，只需要重新初始化即可复用。
+ * {@link #getKey(byte[])}派生密钥的方式与{@link EncryptUtil#deriveAESKey(byte[])}完全一致，加密的结果可以互相解密；
+ * 新的数据请使用{@link #getPBKDF2Key(byte[], byte[], int)}，它不依赖只存在于旧系统上的“Crypto”提供者。
+ * <p>
+ * 该类是线程安全的。
+ *
+ * @author DrkCore
+ * @since 2017年2月18日10:26:41
+ */
+public class AESEngine {
+
+    public static final int DEFAULT_MAX_KEYS = 16;
+
+    private static final String CACHE_KEY_ALGORITHM = "SHA-256";
+    private static final String PBKDF2_ALGORITHM = "PBKDF2WithHmacSHA1";
+    private static final int PBKDF2_KEY_BITS = 256;
+
+    private static volatile AESEngine defaultEngine;
+
+    /**
+     * @return 全局共用的引擎，{@link EncryptUtil}和默认的{@link AESEncryptor}都使用该实例
+     */
+    public static AESEngine getDefault() {
+        if (defaultEngine == null) {
+            synchronized (AESEngine.class) {
+                if (defaultEngine == null) {
+                    defaultEngine = new AESEngine();
+                }
+            }
+        }
+        return defaultEngine;
+    }
+
+    private final LruCache<String, SecretKeySpec> keyCache;
+
+    public AESEngine() {
+        this(DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * @param maxKeys 最多缓存的密钥数
+     */
+    public AESEngine(int maxKeys) {
+        keyCache = new LruCache<>(maxKeys);
+    }
+
+	/* 密钥 */
+
+    /**
+     * 获取密码派生的密钥，缓存中不存在时才会派生。
+     * 派生的密钥与模式和填充无关，缓存以密码的SHA-256摘要为键，不会保存密码本身。
+     *
+     * @param psd
+     * @return
+     * @throws GeneralSecurityException
+     */
+    public SecretKeySpec getKey(byte[] psd) throws GeneralSecurityException {
+        String cacheKey = DigestUtil.digest(CACHE_KEY_ALGORITHM, psd);
+        SecretKeySpec key = keyCache.get(cacheKey);
+        if (key == null) {// 并发时可能重复派生，结果是一样的
+            key = EncryptUtil.deriveAESKey(psd);
+            keyCache.put(cacheKey, key);
+        }
+        return key;
+    }
+
+    /**
+     * 使用{@value #PBKDF2_ALGORITHM}从密码派生256位的密钥，缓存中不存在时才会派生。
+     * 缓存以密码、盐和迭代次数共同的SHA-256摘要为键，不会保存密码本身。
+     * <p>
+     * 密码的每个字节按照无符号数转换为一个字符参与派生，因而任意的字节都会得到确定的结果。
+     *
+     * @param psd
+     * @param salt       随机生成并与密文一起保存
+     * @param iterations 迭代次数，越大越难以暴力破解，派生也越慢
+     * @return
+     * @throws GeneralSecurityException
+     */
+    public SecretKeySpec getPBKDF2Key(byte[] psd, byte[] salt, int iterations) throws GeneralSecurityException {
+        MessageDigest digest = DigestUtil.getInstance(CACHE_KEY_ALGORITHM);
+        digest.update(PBKDF2_ALGORITHM.getBytes());
+        updateInt(digest, psd.length);
+        digest.update(psd);
+        updateInt(digest, salt.length);
+        digest.update(salt);
+        updateInt(digest, iterations);
+        String cacheKey = EncodeUtil.toHexString(digest.digest());
+
+        SecretKeySpec key = keyCache.get(cacheKey);
+        if (key == null) {// 并发时可能重复派生，结果是一样的
+            char[] chars = new char[psd.length];
+            for (int i = 0; i < psd.length; i++) {
+                chars[i] = (char) (psd[i] & 0xFF);
+            }
+            PBEKeySpec spec = new PBEKeySpec(chars, salt, iterations, PBKDF2_KEY_BITS);
+            try {
+                byte[] encodedKey = SecretKeyFactory.getInstance(PBKDF2_ALGORITHM).generateSecret(spec).getEncoded();
+                key = new SecretKeySpec(encodedKey, EncryptUtil.AES);
+            } finally {
+                spec.clearPassword();
+                Arrays.fill(chars, '\0');
+            }
+            keyCache.put(cacheKey, key);
+        }
+        return key;
+    }
+
+    private static void updateInt(MessageDigest digest, int value) {
+        digest.update((byte) (value >>> 24));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) value);
+    }
+
+    /**
+     * 清空缓存的密钥，比如在用户登出之后
+     */
+    public void clearKeys() {
+        keyCache.evictAll();
+    }
+
+	/* 加解密 */
+
+    public byte[] encrypt(@EncryptUtil.AESMode String mode, @EncryptUtil.AESPadding String padding, byte[] content, byte[] psd) throws GeneralSecurityException {
+        return doFinal(Cipher.ENCRYPT_MODE, mode, padding, content, psd);
+    }
+
+    public byte[] decrypt(@EncryptUtil.AESMode String mode, @EncryptUtil.AESPadding String padding, byte[] cipherBytes, byte[] psd) throws GeneralSecurityException {
+        return doFinal(Cipher.DECRYPT_MODE, mode, padding, cipherBytes, psd);
+    }
+
+    private byte[] doFinal(int opmode, String mode, String padding, byte[] input, byte[] psd) throws GeneralSecurityException {
+        SecretKeySpec key = getKey(psd);
+        Cipher cipher = getLocalCipher(mode, padding);
+        cipher.init(opmode, key);
+        return cipher.doFinal(input);
+    }
+
+	/* 线程缓存 */
+
+    private static final ThreadLocal<Map<String, Cipher>> LOCAL_CIPHERS = new ThreadLocal<Map<String, Cipher>>() {
+        @Override
+        protected Map<String, Cipher> initialValue() {
+            return new HashMap<>(4);
+        }
+    };
+
+    private static String getCipherName(String mode, String padding) {
+        return EncryptUtil.AES + '/' + mode + '/' + padding;
+    }
+
+    /**
+     * 获取当前线程缓存的{@link Cipher}，首次获取时才会创建。
+     * <b>返回的实例只能在当前线程中临时使用，使用前必须重新初始化，请不要持有。</b>
+     *
+     * @param mode
+     * @param padding
+     * @return
+     * @throws GeneralSecurityException
+     */
+    public static Cipher getLocalCipher(@EncryptUtil.AESMode String mode, @EncryptUtil.AESPadding String padding) throws GeneralSecurityException {
+        String cipherName = getCipherName(mode, padding);
+        Map<String, Cipher> ciphers = LOCAL_CIPHERS.get();
+        Cipher cipher = ciphers.get(cipherName);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(cipherName);
+            ciphers.put(cipherName, cipher);
+        }
+        return cipher;
+    }
+}
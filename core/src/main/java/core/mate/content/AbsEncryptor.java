@@ -2,9 +2,14 @@ package core.mate.content;
 
 import android.text.TextUtils;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
+
+import core.mate.async.IOExecutor;
 
 public abstract class AbsEncryptor {
 
@@ -21,14 +26,21 @@ public abstract class AbsEncryptor {
 	/*继承*/
 
 	public final String encrypt (String src) {
+		return doEncrypt(addSalt(src));
+	}
+
+	public final String decrypt (String cipher) {
+		return removeSalt(doDecrypt(cipher));
+	}
+
+	private String addSalt (String src) {
 		if (src != null && !TextUtils.isEmpty(salt)) {
 			src += salt;
 		}
-		return doEncrypt(src);
+		return src;
 	}
 
-	public final String decrypt (String cipher) {
-		String src = doDecrypt(cipher);
+	private String removeSalt (String src) {
 		if (src != null && !TextUtils.isEmpty(salt) && src.endsWith(salt)) {
 			src = src.substring(0, src.length() - salt.length());
 		}
@@ -41,45 +53,152 @@ public abstract class AbsEncryptor {
 
 	protected abstract String doDecrypt (String cipher);
 
-	/*拓展*/
+	/**
+	 * 批量加密values中[from, to)范围内的字符串并写入到result的对应位置，values已经加过盐。
+	 * 默认逐个调用{@link #doEncrypt(String)}，子类可以重写该方法，在一批数据之间复用密钥、加密器和缓冲区。
+	 * 并发批量加密时该方法会在多个线程中同时调用，每次调用处理不同的范围。
+	 *
+	 * @param values
+	 * @param result
+	 * @param from
+	 * @param to
+	 */
+	protected void doEncryptBatch (String[] values, String[] result, int from, int to) {
+		for (int i = from; i < to; i++) {
+			result[i] = doEncrypt(values[i]);
+		}
+	}
 
 	/**
-	 * 加密集合中的字符串。该方法不会修改原有的数据。
+	 * 批量解密values中[from, to)范围内的密文并写入到result的对应位置，结果之后才会去盐。
+	 * 默认逐个调用{@link #doDecrypt(String)}，重写的要求与{@link #doEncryptBatch(String[], String[], int, int)}一致。
+	 *
+	 * @param values
+	 * @param result
+	 * @param from
+	 * @param to
+	 */
+	protected void doDecryptBatch (String[] values, String[] result, int from, int to) {
+		for (int i = from; i < to; i++) {
+			result[i] = doDecrypt(values[i]);
+		}
+	}
+
+	/*批量*/
+
+	/**
+	 * 每个线程至少处理的数据量，数据过少时并发的开销反而更大
+	 */
+	private static final int MIN_BATCH_PER_WORKER = 32;
+
+	/**
+	 * 批量加密数组中的字符串。该方法不会修改原有数据。
 	 *
 	 * @param values
+	 * @param parallelism 同时处理的线程数，小于等于1或者数据较少时在当前线程处理
 	 * @return
 	 */
-	public final List<String> encrypt (Collection<String> values) {
+	public final String[] encryptBatch (String[] values, int parallelism) {
 		if (values == null) {
 			return null;
 		}
 
-		List<String> list = new ArrayList<>(values.size());
-		if (!values.isEmpty()) {
-			for (String v : values) {
-				list.add(encrypt(v));
-			}
+		String[] salted = new String[values.length];
+		for (int i = 0, len = values.length; i < len; i++) {
+			salted[i] = addSalt(values[i]);
 		}
-		return list;
+		return runBatch(true, salted, parallelism);
 	}
 
 	/**
-	 * 加密数组中的字符串。该方法不会修改原有数据。
+	 * 批量解密数组中的密文。该方法不会修改原有数据。
 	 *
 	 * @param values
+	 * @param parallelism 同时处理的线程数，小于等于1或者数据较少时在当前线程处理
 	 * @return
 	 */
-	public final String[] encrypt (String... values) {
+	public final String[] decryptBatch (String[] values, int parallelism) {
+		if (values == null) {
+			return null;
+		}
+
+		String[] result = runBatch(false, values, parallelism);
+		for (int i = 0, len = result.length; i < len; i++) {
+			result[i] = removeSalt(result[i]);
+		}
+		return result;
+	}
+
+	public final List<String> encryptBatch (Collection<String> values, int parallelism) {
+		if (values == null) {
+			return null;
+		}
+		return new ArrayList<>(Arrays.asList(encryptBatch(values.toArray(new String[values.size()]), parallelism)));
+	}
+
+	public final List<String> decryptBatch (Collection<String> values, int parallelism) {
 		if (values == null) {
 			return null;
 		}
+		return new ArrayList<>(Arrays.asList(decryptBatch(values.toArray(new String[values.size()]), parallelism)));
+	}
 
+	private String[] runBatch (final boolean encrypt, final String[] values, int parallelism) {
+		final String[] result = new String[values.length];
 		int len = values.length;
-		String[] encryptValues = new String[len];
-		for (int i = 0; i < len; i++) {
-			encryptValues[i] = encrypt(values[i]);
+		int workerCount = Math.min(parallelism, len / MIN_BATCH_PER_WORKER);
+		if (workerCount <= 1) {
+			runSlice(encrypt, values, result, 0, len);
+			return result;
+		}
+
+		// 按照线程数平均切分，每个线程处理连续的一段
+		List<Callable<Void>> tasks = new ArrayList<>(workerCount);
+		for (int i = 0; i < workerCount; i++) {
+			final int from = (int) ((long) len * i / workerCount);
+			final int to = (int) ((long) len * (i + 1) / workerCount);
+			tasks.add(() -> {
+				runSlice(encrypt, values, result, from, to);
+				return null;
+			});
 		}
-		return encryptValues;
+		try {
+			IOExecutor.getShared().runAll(tasks);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return result;
+	}
+
+	private void runSlice (boolean encrypt, String[] values, String[] result, int from, int to) {
+		if (encrypt) {
+			doEncryptBatch(values, result, from, to);
+		} else {
+			doDecryptBatch(values, result, from, to);
+		}
+	}
+
+	/*拓展*/
+
+	/**
+	 * 加密集合中的字符串。该方法不会修改原有的数据。
+	 * 具体实现请参阅{@link #encryptBatch(Collection, int)}，在当前线程处理。
+	 *
+	 * @param values
+	 * @return
+	 */
+	public final List<String> encrypt (Collection<String> values) {
+		return encryptBatch(values, 1);
+	}
+
+	/**
+	 * 加密数组中的字符串。该方法不会修改原有数据。
+	 *
+	 * @param values
+	 * @return
+	 */
+	public final String[] encrypt (String... values) {
+		return encryptBatch(values, 1);
 	}
 
 	/**
@@ -89,17 +208,7 @@ public abstract class AbsEncryptor {
 	 * @return
 	 */
 	public final List<String> decrypt (Collection<String> values) {
-		if (values == null) {
-			return null;
-		}
-
-		List<String> list = new ArrayList<>(values.size());
-		if (!values.isEmpty()) {
-			for (String v : values) {
-				list.add(decrypt(v));
-			}
-		}
-		return list;
+		return decryptBatch(values, 1);
 	}
 
 	/**
@@ -109,18 +218,7 @@ public abstract class AbsEncryptor {
 	 * @return
 	 */
 	public final String[] decrypt (String... values) {
-		if (values == null) {
-			return null;
-		}
-
-		int len = values.length;
-		String[] decryptValues = new String[len];
-		if (len > 0) {
-			for (int i = 0; i < len; i++) {
-				decryptValues[i] = decrypt(values[i]);
-			}
-		}
-		return decryptValues;
+		return decryptBatch(values, 1);
 	}
 
 }
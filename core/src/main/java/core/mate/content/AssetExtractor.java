@@ -0,0 +1,539 @@
+package core.mate.content;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import core.mate.Core;
+import core.mate.async.IOExecutor;
+import core.mate.util.BufferPool;
+import core.mate.util.ContextUtil;
+import core.mate.util.DigestUtil;
+import core.mate.util.EncodeUtil;
+import core.mate.util.FileUtil;
+import core.mate.util.IOUtil;
+import core.mate.util.LogUtil;
+
+/**
+ * 批量导出assets目录的工具。
+ * <p>
+ * 导出时只遍历一次assets目录树，之后使用{@link IOExecutor}并发地写入文件。
+ * 未经压缩的资源通过{@link AssetFileDescriptor}映射安装包中对应的区域直接写入，不会经过堆上的缓冲区；
+ * 被压缩的资源无法获取描述符，此时才使用流读取。
+ * <p>
+ * 导出完成之后会在{@link ContextUtil#getFilesDir()}下保存一份清单，记录应用的版本以及每个文件的长度和MD5。
+ * 再次导出时如果应用的版本没有变化，长度一致的文件会被直接跳过；
+ * 版本变化时只会重新计算资源的MD5，内容没有改变的文件同样不会重新写入。
+ * <b>注意，清单不会检查导出之后被改写但是长度没有变化的文件，需要时请调用{@link #setUseManifest(boolean)}关闭。</b>
+ *
+ * @author DrkCore
+ * @since 2017年2月16日15:20:41
+ */
+public class AssetExtractor {
+
+    private static final int MANIFEST_MAGIC = 0x414D4E46;// AMNF
+    private static final int MANIFEST_VERSION = 1;
+
+    private final AssetManager assetMgr;
+    private int parallelism = IOExecutor.getDefaultParallelism();
+    private boolean cover = true;
+    private boolean useManifest = true;
+    private boolean legacyLayout;
+    private FileUtil.OnProgressListener listener;
+
+    public AssetExtractor() {
+        this(ContextUtil.getAssets());
+    }
+
+    public AssetExtractor(AssetManager assetMgr) {
+        this.assetMgr = assetMgr;
+    }
+
+	/* 配置 */
+
+    /**
+     * @param parallelism 同时写入的文件数的上限，小于等于1时在当前线程导出
+     * @return
+     */
+    public AssetExtractor setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * 设置是否覆盖已经存在的文件，默认为true。为false时已经存在的文件总是被跳过。
+     *
+     * @param cover
+     * @return
+     */
+    public AssetExtractor setCover(boolean cover) {
+        this.cover = cover;
+        return this;
+    }
+
+    /**
+     * 设置是否使用清单跳过没有变化的文件，默认为true
+     *
+     * @param useManifest
+     * @return
+     */
+    public AssetExtractor setUseManifest(boolean useManifest) {
+        this.useManifest = useManifest;
+        return this;
+    }
+
+    /**
+     * 设置是否使用旧版本{@link ContextUtil#exportAssetDir(String, File, boolean)}的目录结构，默认为false。
+     * 为true时每一层子目录都会以其在assets中的完整路径创建在上一层目录之下，
+     * 比如myDir/sub会被导出为dstDir/myDir/myDir/sub。
+     *
+     * @param legacyLayout
+     * @return
+     */
+    public AssetExtractor setLegacyLayout(boolean legacyLayout) {
+        this.legacyLayout = legacyLayout;
+        return this;
+    }
+
+    /**
+     * 设置进度回调，回调的项目数包括被跳过的文件，字节数只包括实际写入的数据。
+     *
+     * @param listener
+     * @return
+     */
+    public AssetExtractor setOnProgressListener(@Nullable FileUtil.OnProgressListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+	/* 导出 */
+
+    private volatile int extractedCount;
+    private volatile int skippedCount;
+
+    /**
+     * 一次导出的计数，每次调用{@link #extract(String, File)}时单独创建
+     */
+    private static final class Counter {
+
+        final AtomicInteger extractedCount = new AtomicInteger();
+        final AtomicInteger skippedCount = new AtomicInteger();
+        final AtomicLong itemCount = new AtomicLong();
+        final AtomicLong byteCount = new AtomicLong();
+        final FileUtil.OnProgressListener listener;
+
+        Counter(@Nullable FileUtil.OnProgressListener listener) {
+            this.listener = listener;
+        }
+
+        void onExtracted(long bytes) {
+            extractedCount.incrementAndGet();
+            onProgress(bytes);
+        }
+
+        void onSkipped() {
+            skippedCount.incrementAndGet();
+            onProgress(0);
+        }
+
+        private void onProgress(long bytes) {
+            long items = itemCount.incrementAndGet();
+            long sum = byteCount.addAndGet(bytes);
+            if (listener != null) {
+                listener.onProgress(items, sum);
+            }
+        }
+    }
+
+    /**
+     * 导出assetDir到dstDir之下，比如导出assets中的myDir会得到dstDir/myDir，myDir/sub会得到dstDir/myDir/sub。
+     * 判断assets中的项目是文件还是目录的规则与{@link ContextUtil#exportAssetDir(String, File, boolean)}一致，
+     * 因此assetDir和其子目录不允许为空。
+     * <p>
+     * 每次导出的状态都只属于该次调用，同一个实例可以在多个线程中同时导出。
+     *
+     * @param assetDir
+     * @param dstDir
+     * @return 导出后的assetDir对应的目录
+     * @throws IOException
+     */
+    public File extract(String assetDir, File dstDir) throws IOException {
+        String[] items = assetMgr.list(assetDir);
+        if (items == null || items.length == 0) {
+            throw new IllegalStateException(assetDir + "为空！");
+        }
+        File dstAssetDir = FileUtil.getOrCreateDir(new File(dstDir, assetDir));
+        List<String> assets = new ArrayList<>();
+        List<File> dstFiles = new ArrayList<>();
+        listAssets(assetDir, items, dstAssetDir, assets, dstFiles);
+
+        File manifestFile = useManifest ? getManifestFile(assetDir, dstAssetDir, legacyLayout) : null;
+        String appVersion = getAppVersion();
+        Map<String, ManifestEntry> oldManifest = new HashMap<>();
+        boolean sameVersion = manifestFile != null && appVersion.equals(readManifest(manifestFile, oldManifest));
+        Map<String, ManifestEntry> newManifest = new ConcurrentHashMap<>();
+        Counter counter = new Counter(listener);
+
+        int count = assets.size();
+        int workerCount = Math.min(parallelism, count);
+        AtomicInteger nextIndex = new AtomicInteger();
+        Callable<Void> task = () -> {
+            int idx;
+            String asset;
+            while ((idx = nextIndex.getAndIncrement()) < count) {
+                asset = assets.get(idx);
+                extractAsset(asset, dstFiles.get(idx), oldManifest.get(asset), sameVersion, newManifest, counter);
+            }
+            return null;
+        };
+        if (workerCount <= 1) {
+            try {
+                task.call();
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        } else {
+            List<Callable<Void>> tasks = new ArrayList<>(workerCount);
+            for (int i = 0; i < workerCount; i++) {
+                tasks.add(task);
+            }
+            IOExecutor.getShared().runAll(tasks);
+        }
+
+        if (manifestFile != null) {
+            writeManifest(manifestFile, appVersion, assets, newManifest);
+        }
+        extractedCount = counter.extractedCount.get();
+        skippedCount = counter.skippedCount.get();
+        return dstAssetDir;
+    }
+
+    /**
+     * 遍历assets目录树并创建好对应的目录，每个项目只会列出一次
+     *
+     * @param assets   用于保存所有的文件
+     * @param dstFiles 用于保存每个文件对应的目标文件
+     */
+    private void listAssets(String assetDir, String[] items, File dstAssetDir, List<String> assets, List<File> dstFiles) throws IOException {
+        List<String> dirs = new ArrayList<>();
+        List<File> dstDirs = new ArrayList<>();
+        List<String[]> dirItems = new ArrayList<>();
+        dirs.add(assetDir);
+        dstDirs.add(dstAssetDir);
+        dirItems.add(items);
+
+        String dir, item;
+        File dstDir;
+        String[] subItems;
+        for (int i = 0; i < dirs.size(); i++) {
+            dir = dirs.get(i);
+            dstDir = FileUtil.getOrCreateDir(dstDirs.get(i));
+            for (String name : dirItems.get(i)) {
+                item = dir + '/' + name;
+                subItems = assetMgr.list(item);
+                if (subItems == null) {
+                    continue;
+                }
+                if (subItems.length > 0) {// 子项目是目录
+                    dirs.add(item);
+                    dstDirs.add(new File(dstDir, legacyLayout ? item : name));
+                    dirItems.add(subItems);
+                } else {// 文件
+                    assets.add(item);
+                    dstFiles.add(new File(dstDir, name));
+                }
+            }
+            dirItems.set(i, null);
+        }
+    }
+
+    private void extractAsset(String asset, File dstFile, @Nullable ManifestEntry oldEntry, boolean sameVersion,
+                              Map<String, ManifestEntry> newManifest, Counter counter) throws IOException {
+        if (dstFile.isDirectory()) {
+            throw new IOException("指定位置" + dstFile + "被目录占据，无法写入");
+        }
+
+        if (dstFile.isFile()) {
+            if (!cover) {
+                if (oldEntry != null) {
+                    newManifest.put(asset, oldEntry);
+                }
+                counter.onSkipped();
+                return;
+            }
+            if (oldEntry != null && dstFile.length() == oldEntry.length) {
+                if (sameVersion) {// 版本没有变化，资源必然没有变化
+                    newManifest.put(asset, oldEntry);
+                    counter.onSkipped();
+                    return;
+                }
+
+                MessageDigest digest = DigestUtil.getInstance(DigestUtil.ALGORITHM_MD5);
+                writeAsset(assetMgr, asset, null, digest);
+                String hash = EncodeUtil.toHexString(digest.digest());
+                if (hash.equals(oldEntry.hash)) {
+                    newManifest.put(asset, oldEntry);
+                    counter.onSkipped();
+                    return;
+                }
+            }
+        }
+
+        MessageDigest digest = DigestUtil.getInstance(DigestUtil.ALGORITHM_MD5);
+        long length = writeAsset(assetMgr, asset, dstFile, digest);
+        newManifest.put(asset, new ManifestEntry(length, EncodeUtil.toHexString(digest.digest())));
+        counter.onExtracted(length);
+    }
+
+    /**
+     * @return 最近一次完成的导出实际写入的文件数
+     */
+    public int getExtractedCount() {
+        return extractedCount;
+    }
+
+    /**
+     * @return 最近一次完成的导出被跳过的文件数
+     */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+	/* 写入 */
+
+    /**
+     * 将资源写入dstFile，dstFile原有的内容会被清空。
+     * 资源未经压缩时直接读取安装包中对应的区域，不小于{@link IOUtil#MAP_THRESHOLD}的资源映射到内存中写入，
+     * 较小的资源按位置读取到缓冲区中，以免大量的小文件各自占用一个映射直到被回收。被压缩的资源使用流读取。
+     *
+     * @param assetMgr
+     * @param asset
+     * @param dstFile  为null时只读取资源
+     * @param digest   不为null时同时计算资源的摘要
+     * @return 资源的长度
+     * @throws IOException
+     */
+    public static long writeAsset(AssetManager assetMgr, String asset, @Nullable File dstFile, @Nullable MessageDigest digest) throws IOException {
+        AssetFileDescriptor afd = null;
+        try {
+            afd = assetMgr.openFd(asset);
+        } catch (FileNotFoundException e) {
+            // 被压缩的资源无法打开描述符，这里不需要打印栈信息
+        }
+
+        boolean success = false;
+        try {
+            long length = afd != null ? writeAsset(afd, dstFile, digest) : writeAsset(assetMgr.open(asset, AssetManager.ACCESS_STREAMING), dstFile, digest);
+            success = true;
+            return length;
+        } finally {
+            if (afd != null) {
+                try {
+                    afd.close();
+                } catch (IOException e) {
+                    LogUtil.e(e);
+                }
+            }
+            if (!success && dstFile != null) {
+                dstFile.delete();
+            }
+        }
+    }
+
+    private static long writeAsset(AssetFileDescriptor afd, @Nullable File dstFile, @Nullable MessageDigest digest) throws IOException {
+        long length = afd.getLength();
+        FileInputStream in = afd.createInputStream();
+        FileOutputStream out = null;
+        try {
+            out = dstFile != null ? new FileOutputStream(dstFile) : null;
+            if (length >= IOUtil.MAP_THRESHOLD) {
+                ByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), length);
+                if (digest != null) {
+                    digest.update(buffer.duplicate());
+                }
+                if (out != null) {
+                    FileChannel outChannel = out.getChannel();
+                    while (buffer.hasRemaining()) {
+                        outChannel.write(buffer);
+                    }
+                }
+            } else if (length > 0) {
+                byte[] bytes = BufferPool.acquireBytes((int) length);
+                try {
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, (int) length);
+                    FileChannel channel = in.getChannel();
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, afd.getStartOffset() + buffer.position()) < 0) {
+                            throw new EOFException("资源不完整：" + afd);
+                        }
+                    }
+                    if (digest != null) {
+                        digest.update(bytes, 0, (int) length);
+                    }
+                    if (out != null) {
+                        out.write(bytes, 0, (int) length);
+                    }
+                } finally {
+                    BufferPool.release(bytes);
+                }
+            }
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+            return length;
+        } finally {
+            IOUtil.close(in);
+            IOUtil.close(out);
+        }
+    }
+
+    private static long writeAsset(InputStream in, @Nullable File dstFile, @Nullable MessageDigest digest) throws IOException {
+        OutputStream out = null;
+        byte[] buffer = BufferPool.acquireBytes(BufferPool.DEFAULT_BUFFER_SIZE);
+        try {
+            out = dstFile != null ? new FileOutputStream(dstFile) : null;
+            long total = 0;
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                if (digest != null) {
+                    digest.update(buffer, 0, len);
+                }
+                if (out != null) {
+                    out.write(buffer, 0, len);
+                }
+                total += len;
+            }
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+            return total;
+        } finally {
+            BufferPool.release(buffer);
+            IOUtil.close(in);
+            IOUtil.close(out);
+        }
+    }
+
+	/* 清单 */
+
+    private static final class ManifestEntry {
+
+        final long length;
+        final String hash;
+
+        ManifestEntry(long length, String hash) {
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+
+    private static File getManifestFile(String assetDir, File dstAssetDir, boolean legacyLayout) {
+        String key = assetDir + '|' + dstAssetDir.getAbsolutePath() + (legacyLayout ? "|legacy" : "");
+        String name = DigestUtil.digestMD5(key) + ".manifest";
+        return new File(ContextUtil.getDirUnderFiles("AssetManifest"), name);
+    }
+
+    /**
+     * @return 应用的版本，每次安装或者更新之后都会改变
+     */
+    private static String getAppVersion() {
+        try {
+            Context context = Core.getInstance().getAppContext();
+            PackageInfo pkgInfo = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return pkgInfo.versionCode + "/" + pkgInfo.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            LogUtil.e(e);
+            return "";
+        }
+    }
+
+    /**
+     * @return 清单中记录的应用版本，清单不存在或者损坏时返回null
+     */
+    @Nullable
+    private static String readManifest(File manifestFile, Map<String, ManifestEntry> result) {
+        if (!manifestFile.isFile()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifestFile)));
+            if (in.readInt() != MANIFEST_MAGIC || in.readInt() != MANIFEST_VERSION) {
+                return null;
+            }
+            String appVersion = in.readUTF();
+            for (int i = 0, count = in.readInt(); i < count; i++) {
+                result.put(in.readUTF(), new ManifestEntry(in.readLong(), in.readUTF()));
+            }
+            return appVersion;
+        } catch (IOException e) {
+            LogUtil.e(e);
+            result.clear();
+            return null;
+        } finally {
+            IOUtil.close(in);
+        }
+    }
+
+    private static void writeManifest(File manifestFile, String appVersion, List<String> assets, Map<String, ManifestEntry> entries) throws IOException {
+        File tmpFile = new File(manifestFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeInt(MANIFEST_VERSION);
+            out.writeUTF(appVersion);
+            out.writeInt(entries.size());
+            ManifestEntry entry;
+            for (String asset : assets) {
+                entry = entries.get(asset);
+                if (entry != null) {
+                    out.writeUTF(asset);
+                    out.writeLong(entry.length);
+                    out.writeUTF(entry.hash);
+                }
+            }
+            out.flush();
+        } finally {
+            IOUtil.close(out);
+        }
+        if (!tmpFile.renameTo(manifestFile)) {
+            manifestFile.delete();
+            if (!tmpFile.renameTo(manifestFile)) {
+                tmpFile.delete();
+                throw new IOException("无法保存清单：" + manifestFile);
+            }
+        }
+    }
+}
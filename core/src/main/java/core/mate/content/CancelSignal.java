@@ -0,0 +1,32 @@
+package core.mate.content;
+
+import java.io.InterruptedIOException;
+
+/**
+ * 用于取消耗时IO操作的信号。操作会在合适的时机检查信号，已经取消时抛出{@link InterruptedIOException}。
+ * 可以在任意线程中调用{@link #cancel()}。
+ *
+ * @author DrkCore
+ * @since 2017年2月16日09:42:10
+ */
+public class CancelSignal {
+
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @throws InterruptedIOException 已经取消时抛出
+     */
+    public void throwIfCancelled() throws InterruptedIOException {
+        if (cancelled) {
+            throw new InterruptedIOException("操作已取消");
+        }
+    }
+}
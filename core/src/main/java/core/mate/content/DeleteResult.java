@@ -0,0 +1,76 @@
+package core.mate.content;
+
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import core.mate.util.FileUtil;
+
+/**
+ * 批量删除项目的结果，由{@link FileUtil#delete(int, FileUtil.OnProgressListener, File...)}返回。
+ * 删除过程中的统计是线程安全的。
+ *
+ * @author DrkCore
+ * @since 2017年2月13日10:12:36
+ */
+public class DeleteResult {
+
+    private final AtomicLong deletedCount = new AtomicLong();
+    private final AtomicLong deletedBytes = new AtomicLong();
+    private final List<File> failedItems = Collections.synchronizedList(new ArrayList<>());
+    private final FileUtil.OnProgressListener listener;
+
+    public DeleteResult(@Nullable FileUtil.OnProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 记录一个成功删除的项目，并回调进度
+     *
+     * @param bytes 项目删除前的大小，目录为0
+     */
+    public void onDeleted(long bytes) {
+        long count = deletedCount.incrementAndGet();
+        long sum = deletedBytes.addAndGet(bytes);
+        if (listener != null) {
+            listener.onProgress(count, sum);
+        }
+    }
+
+    public void onFailed(File item) {
+        failedItems.add(item);
+    }
+
+	/* 结果 */
+
+    /**
+     * @return 成功删除的文件和目录的数量
+     */
+    public long getDeletedCount() {
+        return deletedCount.get();
+    }
+
+    /**
+     * @return 成功删除的文件的大小之和
+     */
+    public long getDeletedBytes() {
+        return deletedBytes.get();
+    }
+
+    /**
+     * @return 删除失败的项目。子项目删除失败时其所在的目录也必然删除失败。
+     */
+    public List<File> getFailedItems() {
+        synchronized (failedItems) {
+            return new ArrayList<>(failedItems);
+        }
+    }
+
+    public boolean isSuccess() {
+        return failedItems.isEmpty();
+    }
+}
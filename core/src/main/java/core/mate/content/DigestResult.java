@@ -0,0 +1,98 @@
+package core.mate.content;
+
+import android.support.annotation.Nullable;
+
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import core.mate.util.EncodeUtil;
+
+/**
+ * 同一份数据的一个或多个摘要，以算法名称为键。
+ *
+ * @author DrkCore
+ * @since 2017年2月15日21:18:52
+ */
+public class DigestResult {
+
+    private final Map<String, byte[]> digests;
+
+    public DigestResult(Map<String, byte[]> digests) {
+        this.digests = Collections.unmodifiableMap(new LinkedHashMap<>(digests));
+    }
+
+    /**
+     * 完成所有摘要的计算并保存结果。调用之后这些{@link MessageDigest}会被重置。
+     *
+     * @param digests
+     */
+    public DigestResult(MessageDigest... digests) {
+        Map<String, byte[]> map = new LinkedHashMap<>(digests.length);
+        for (MessageDigest digest : digests) {
+            map.put(digest.getAlgorithm(), digest.digest());
+        }
+        this.digests = Collections.unmodifiableMap(map);
+    }
+
+    public Set<String> getAlgorithms() {
+        return digests.keySet();
+    }
+
+    /**
+     * @param algorithm
+     * @return 指定算法的摘要，不存在时返回null
+     */
+    @Nullable
+    public byte[] getDigest(String algorithm) {
+        byte[] digest = digests.get(algorithm);
+        return digest != null ? digest.clone() : null;
+    }
+
+    /**
+     * @param algorithm
+     * @return 指定算法的小写十六进制摘要，不存在时返回null
+     */
+    @Nullable
+    public String getHex(String algorithm) {
+        byte[] digest = digests.get(algorithm);
+        return digest != null ? EncodeUtil.toHexString(digest) : null;
+    }
+
+    /**
+     * 判断两个结果中共有的算法的摘要是否全部一致。没有共有的算法时返回false。
+     *
+     * @param other
+     * @return
+     */
+    public boolean matches(DigestResult other) {
+        boolean compared = false;
+        byte[] otherDigest;
+        for (Map.Entry<String, byte[]> entry : digests.entrySet()) {
+            otherDigest = other.digests.get(entry.getKey());
+            if (otherDigest != null) {
+                if (!MessageDigest.isEqual(entry.getValue(), otherDigest)) {
+                    return false;
+                }
+                compared = true;
+            }
+        }
+        return compared;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("DigestResult{");
+        boolean first = true;
+        for (String algorithm : digests.keySet()) {
+            if (!first) {
+                builder.append(", ");
+            }
+            builder.append(algorithm).append('=').append(getHex(algorithm));
+            first = false;
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,28 @@
+package core.mate.content;
+
+import java.io.File;
+
+/**
+ * 带有摘要的文件，由{@link core.mate.util.FileUtil#copyWithDigest(File, File, int, core.mate.util.AbsFileAppender, boolean, String...)}返回。
+ *
+ * @author DrkCore
+ * @since 2017年2月15日21:40:10
+ */
+public class DigestedFile {
+
+    private final File file;
+    private final DigestResult digest;
+
+    public DigestedFile(File file, DigestResult digest) {
+        this.file = file;
+        this.digest = digest;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public DigestResult getDigest() {
+        return digest;
+    }
+}
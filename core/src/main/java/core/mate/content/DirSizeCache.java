@@ -0,0 +1,97 @@
+package core.mate.content;
+
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import java.io.File;
+
+/**
+ * 目录大小的缓存，配合{@link core.mate.util.FileUtil#getSize(File, DirSizeCache, int)}使用。
+ * <p>
+ * 每个目录缓存其直属的文件以及子目录，并以目录的路径和{@link File#lastModified()}为键。
+ * 目录的修改时间只在其直属项目被添加、删除或者重命名时改变，因而再次统计时只需要检查目录的修改时间，
+ * 修改时间没有改变的目录不会再列出子项目，也不需要再逐个判断子项目是否为目录。
+ * <p>
+ * 改写已有文件的内容不会改变目录的修改时间，因而缓存中只保存目录结构，文件的大小在每次统计时重新获取。
+ *
+ * @author DrkCore
+ * @since 2017年2月12日19:42:15
+ */
+public class DirSizeCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 2048;
+
+    public static final class Entry {
+
+        private final long lastModified;
+        private final File[] files;
+        private final File[] subDirs;
+
+        public Entry(long lastModified, File[] files, File[] subDirs) {
+            this.lastModified = lastModified;
+            this.files = files;
+            this.subDirs = subDirs;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return 目录下直属的文件
+         */
+        public File[] getFiles() {
+            return files;
+        }
+
+        /**
+         * @return 目录下直属的子目录
+         */
+        public File[] getSubDirs() {
+            return subDirs;
+        }
+    }
+
+    private final LruCache<String, Entry> cache;
+
+    public DirSizeCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries 最多缓存的目录数
+     */
+    public DirSizeCache(int maxEntries) {
+        cache = new LruCache<>(maxEntries);
+    }
+
+    /**
+     * 获取目录的缓存
+     *
+     * @param dir
+     * @param lastModified 目录当前的修改时间
+     * @return 缓存不存在或者已经过期时返回null
+     */
+    @Nullable
+    public Entry get(File dir, long lastModified) {
+        Entry entry = cache.get(dir.getAbsolutePath());
+        return entry != null && entry.lastModified == lastModified ? entry : null;
+    }
+
+    public void put(File dir, Entry entry) {
+        cache.put(dir.getAbsolutePath(), entry);
+    }
+
+    /**
+     * 移除目录的缓存。该目录的上级目录在下一次统计时依旧会检查该目录，因而不需要一并移除。
+     *
+     * @param dir
+     */
+    public void invalidate(File dir) {
+        cache.remove(dir.getAbsolutePath());
+    }
+
+    public void clear() {
+        cache.evictAll();
+    }
+}
@@ -0,0 +1,414 @@
+package core.mate.content;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.mate.util.ContextUtil;
+import core.mate.util.DigestUtil;
+import core.mate.util.IOUtil;
+import core.mate.util.LogUtil;
+
+/**
+ * 目录树的快照，记录目录下每个项目的路径、类型、大小和修改时间，可以保存为紧凑的二进制文件。
+ * <p>
+ * 通过{@link #scan(File, FileFilter, boolean, DirSnapshot)}基于上一次的快照重新扫描时，
+ * 修改时间没有改变的目录不会再列出子项目，也不需要再逐个判断子项目是否为目录，
+ * 只会沿用上一次的文件和子目录列表，并重新获取其中每个文件的大小和修改时间。
+ * 之后可以通过{@link #diff(DirSnapshot)}得到两次扫描之间新增、删除和修改的项目。
+ * <p>
+ * 使用方式：
+ * <pre>
+ * File snapshotFile = DirSnapshot.getDefaultFile(root);
+ * DirSnapshot old = DirSnapshot.load(snapshotFile);
+ * DirSnapshot now = DirSnapshot.scan(root, filter, false, old);
+ * now.save(snapshotFile);
+ * DirSnapshot.Diff diff = now.diff(old);
+ * </pre>
+ * <b>注意，基于旧的快照扫描时必须使用相同的过滤器。</b>
+ *
+ * @author DrkCore
+ * @since 2017年2月15日16:08:52
+ */
+public class DirSnapshot {
+
+    private static final int MAGIC = 0x44534E50;// DSNP
+    private static final int VERSION = 1;
+
+    public static final class Entry {
+
+        private final File file;
+        private final boolean dir;
+        private final long size;
+        private final long lastModified;
+
+        Entry(File file, boolean dir, long size, long lastModified) {
+            this.file = file;
+            this.dir = dir;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public boolean isDirectory() {
+            return dir;
+        }
+
+        /**
+         * @return 文件的大小，目录为0
+         */
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public String toString() {
+            return file.getPath();
+        }
+    }
+
+    /**
+     * 目录节点。修改时间没有改变时沿用上一次的文件和子目录列表。
+     */
+    private static final class DirNode {
+
+        final Entry entry;
+        final Entry[] files;
+        final DirNode[] subDirs;
+
+        DirNode(Entry entry, Entry[] files, DirNode[] subDirs) {
+            this.entry = entry;
+            this.files = files;
+            this.subDirs = subDirs;
+        }
+    }
+
+    private final File root;
+    private final boolean allowHiddenDir;
+    @Nullable
+    private final DirNode rootNode;
+
+    private DirSnapshot(File root, boolean allowHiddenDir, @Nullable DirNode rootNode) {
+        this.root = root;
+        this.allowHiddenDir = allowHiddenDir;
+        this.rootNode = rootNode;
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+	/* 扫描 */
+
+    /**
+     * 扫描目录。
+     *
+     * @param root
+     * @param filter         只作用于文件，无论目录是否通过过滤都会记录并深入
+     * @param allowHiddenDir 是否进入{@link File#isHidden()}为true的目录
+     * @param previous       上一次的快照，可以为null。根目录或者allowHiddenDir不同时会被忽略。
+     * @return 根目录不是目录时返回空的快照
+     */
+    public static DirSnapshot scan(File root, @Nullable FileFilter filter, boolean allowHiddenDir, @Nullable DirSnapshot previous) {
+        root = root.getAbsoluteFile();
+        Map<String, DirNode> prevNodes = new HashMap<>();
+        if (previous != null && previous.rootNode != null
+                && previous.root.equals(root) && previous.allowHiddenDir == allowHiddenDir) {
+            indexNodes(previous.rootNode, prevNodes);
+        }
+        DirNode rootNode = root.isDirectory() ? scanDir(root, filter, allowHiddenDir, prevNodes) : null;
+        return new DirSnapshot(root, allowHiddenDir, rootNode);
+    }
+
+    private static void indexNodes(DirNode node, Map<String, DirNode> result) {
+        result.put(node.entry.file.getPath(), node);
+        for (DirNode subDir : node.subDirs) {
+            indexNodes(subDir, result);
+        }
+    }
+
+    private static DirNode scanDir(File dir, @Nullable FileFilter filter, boolean allowHiddenDir, Map<String, DirNode> prevNodes) {
+        long lastModified = dir.lastModified();
+        Entry entry = new Entry(dir, true, 0, lastModified);
+        DirNode prevNode = prevNodes.get(dir.getPath());
+
+        List<DirNode> subDirs = new ArrayList<>();
+        List<Entry> files = new ArrayList<>();
+        if (prevNode != null && prevNode.entry.lastModified == lastModified) {// 直属项目没有增删，但文件的内容可能被改写
+            long fileModified;
+            for (Entry prevFile : prevNode.files) {
+                fileModified = prevFile.file.lastModified();
+                if (fileModified != 0) {
+                    files.add(new Entry(prevFile.file, false, prevFile.file.length(), fileModified));
+                }
+            }
+            for (DirNode prevSubDir : prevNode.subDirs) {
+                if (prevSubDir.entry.file.isDirectory()) {
+                    subDirs.add(scanDir(prevSubDir.entry.file, filter, allowHiddenDir, prevNodes));
+                }
+            }
+            return new DirNode(entry, files.toArray(new Entry[files.size()]), subDirs.toArray(new DirNode[subDirs.size()]));
+        }
+
+        File[] items = dir.listFiles();
+        if (items != null) {
+            for (File item : items) {
+                if (item.isDirectory()) {
+                    if (allowHiddenDir || !item.isHidden()) {
+                        subDirs.add(scanDir(item, filter, allowHiddenDir, prevNodes));
+                    }
+                } else if (filter == null || filter.accept(item)) {
+                    files.add(new Entry(item, false, item.length(), item.lastModified()));
+                }
+            }
+        }
+        return new DirNode(entry, files.toArray(new Entry[files.size()]), subDirs.toArray(new DirNode[subDirs.size()]));
+    }
+
+	/* 结果 */
+
+    /**
+     * @return 以先序排列的所有项目，包括根目录
+     */
+    public List<Entry> getEntries() {
+        List<Entry> result = new ArrayList<>();
+        if (rootNode != null) {
+            collect(rootNode, result, true);
+        }
+        return result;
+    }
+
+    /**
+     * @return 所有符合过滤条件的文件
+     */
+    public List<File> getFiles() {
+        List<Entry> entries = new ArrayList<>();
+        if (rootNode != null) {
+            collect(rootNode, entries, false);
+        }
+        List<File> result = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            result.add(entry.file);
+        }
+        return result;
+    }
+
+    private static void collect(DirNode node, List<Entry> result, boolean includeDir) {
+        if (includeDir) {
+            result.add(node.entry);
+        }
+        Collections.addAll(result, node.files);
+        for (DirNode subDir : node.subDirs) {
+            collect(subDir, result, includeDir);
+        }
+    }
+
+	/* 比较 */
+
+    public static final class Diff {
+
+        private final List<Entry> addedItems = new ArrayList<>();
+        private final List<Entry> removedItems = new ArrayList<>();
+        private final List<Entry> modifiedItems = new ArrayList<>();
+
+        /**
+         * @return 新增的文件和目录
+         */
+        public List<Entry> getAddedItems() {
+            return addedItems;
+        }
+
+        /**
+         * @return 已经不存在的文件和目录，其中的数据来自旧的快照
+         */
+        public List<Entry> getRemovedItems() {
+            return removedItems;
+        }
+
+        /**
+         * @return 大小或者修改时间发生了变化的文件，目录的修改时间不计入
+         */
+        public List<Entry> getModifiedItems() {
+            return modifiedItems;
+        }
+
+        public boolean isEmpty() {
+            return addedItems.isEmpty() && removedItems.isEmpty() && modifiedItems.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "Diff{added=" + addedItems.size()
+                    + ", removed=" + removedItems.size()
+                    + ", modified=" + modifiedItems.size() + '}';
+        }
+    }
+
+    /**
+     * 与旧的快照比较
+     *
+     * @param older 可以为null，此时所有项目都视为新增
+     * @return
+     */
+    public Diff diff(@Nullable DirSnapshot older) {
+        Map<String, Entry> oldEntries = new LinkedHashMap<>();
+        if (older != null) {
+            for (Entry entry : older.getEntries()) {
+                oldEntries.put(entry.file.getPath(), entry);
+            }
+        }
+
+        Diff diff = new Diff();
+        Entry oldEntry;
+        for (Entry entry : getEntries()) {
+            oldEntry = oldEntries.remove(entry.file.getPath());
+            if (oldEntry == null) {
+                diff.addedItems.add(entry);
+            } else if (oldEntry.dir != entry.dir) {// 类型改变视为删除之后新增
+                diff.removedItems.add(oldEntry);
+                diff.addedItems.add(entry);
+            } else if (!entry.dir && (oldEntry.size != entry.size || oldEntry.lastModified != entry.lastModified)) {
+                diff.modifiedItems.add(entry);
+            }
+        }
+        diff.removedItems.addAll(oldEntries.values());
+        return diff;
+    }
+
+	/* 持久化 */
+
+    /**
+     * 获取root的快照默认的保存位置，位于{@link ContextUtil#getCacheDir()}之下
+     *
+     * @param root
+     * @return
+     */
+    public static File getDefaultFile(File root) {
+        String name = DigestUtil.digestMD5(root.getAbsolutePath()) + ".snap";
+        return new File(ContextUtil.getDirUnderCache("DirSnapshot"), name);
+    }
+
+    /**
+     * 保存快照。先写入临时文件再重命名，因而不会留下损坏的快照。
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void save(File file) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(root.getPath());
+            out.writeBoolean(allowHiddenDir);
+            out.writeBoolean(rootNode != null);
+            if (rootNode != null) {
+                writeNode(out, rootNode);
+            }
+            out.flush();
+        } finally {
+            IOUtil.close(out);
+        }
+        if (!tmpFile.renameTo(file)) {
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                tmpFile.delete();
+                throw new IOException("无法保存快照：" + file);
+            }
+        }
+    }
+
+    /**
+     * 目录之下只保存项目名，路径在读取时恢复
+     */
+    private static void writeNode(DataOutputStream out, DirNode node) throws IOException {
+        out.writeLong(node.entry.lastModified);
+        out.writeInt(node.files.length);
+        for (Entry file : node.files) {
+            out.writeUTF(file.file.getName());
+            out.writeLong(file.size);
+            out.writeLong(file.lastModified);
+        }
+        out.writeInt(node.subDirs.length);
+        for (DirNode subDir : node.subDirs) {
+            out.writeUTF(subDir.entry.file.getName());
+            writeNode(out, subDir);
+        }
+    }
+
+    /**
+     * 读取快照
+     *
+     * @param file
+     * @return 文件不存在、损坏或者版本不一致时返回null
+     */
+    @Nullable
+    public static DirSnapshot load(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            File root = new File(in.readUTF());
+            boolean allowHiddenDir = in.readBoolean();
+            DirNode rootNode = in.readBoolean() ? readNode(in, root) : null;
+            return new DirSnapshot(root, allowHiddenDir, rootNode);
+        } catch (IOException e) {
+            LogUtil.e(e);
+            return null;
+        } finally {
+            IOUtil.close(in);
+        }
+    }
+
+    @NonNull
+    private static DirNode readNode(DataInputStream in, File dir) throws IOException {
+        Entry entry = new Entry(dir, true, 0, in.readLong());
+
+        Entry[] files = new Entry[checkCount(in.readInt())];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new Entry(new File(dir, in.readUTF()), false, in.readLong(), in.readLong());
+        }
+
+        DirNode[] subDirs = new DirNode[checkCount(in.readInt())];
+        for (int i = 0; i < subDirs.length; i++) {
+            subDirs[i] = readNode(in, new File(dir, in.readUTF()));
+        }
+        return new DirNode(entry, files, subDirs);
+    }
+
+    private static int checkCount(int count) throws IOException {
+        if (count < 0) {
+            throw new IOException("快照已损坏");
+        }
+        return count;
+    }
+}
@@ -0,0 +1,549 @@
+package core.mate.content;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import core.mate.util.EncryptUtil;
+import core.mate.util.IOUtil;
+import core.mate.util.LogUtil;
+
+/**
+ * 使用AES-GCM加密的记录存储，适用于在磁盘上缓存需要加密的接口数据。
+ * <p>
+ * 目录下有两个文件：数据文件依次存放每条记录的“随机nonce + 密文 + 校验标签”，
+ * 索引文件则在头部记录当前数据文件的代数以及派生密钥使用的盐和迭代次数，之后以追加的方式记录每次写入和删除的键与偏移量。
+ * 打开时重放索引即可得到每条记录的位置，读取单条记录时只需要按位置读出并解密这一条，不需要解密整个文件。
+ * 记录的键作为附加认证数据参与校验，因而密文被篡改或者被挪到别的键下时都无法通过校验。
+ * <p>
+ * 覆盖和删除的记录只会在数据文件中留下空洞，可以通过{@link #getGarbageBytes()}判断是否需要{@link #compact()}。
+ * 整理时将有效的记录原样拷贝到新一代的数据文件中，最后以重命名索引文件的方式提交，中途失败不会影响已有的数据。
+ * <p>
+ * 密钥由{@link AESEngine#getPBKDF2Key(byte[], byte[], int)}派生并缓存，每条记录的读写只有加解密本身的开销。该类是线程安全的。
+ * <p>
+ * 每次写入都会先将记录同步到磁盘再追加索引，因而崩溃之后索引不会指向不完整的记录，代价是每次写入一次fsync。
+ * <p>
+ * <b>注意，该类依赖API 19加入的{@link GCMParameterSpec}，在更低的系统上构造时会抛出{@link UnsupportedOperationException}。</b>
+ *
+ * @author DrkCore
+ * @since 2017年2月19日15:12:37
+ */
+@TargetApi(19)
+public class EncryptedBlobStore implements Closeable {
+
+    private static final int MAGIC = 0x45424C53;// EBLS
+    private static final int VERSION = 2;
+
+    private static final int SALT_SIZE = 16;
+    private static final int DEFAULT_ITERATIONS = 10000;
+    private static final int MAX_NAME_UTF_LENGTH = 65535;
+
+    private static final int NONCE_SIZE = 12;
+    private static final int TAG_BITS = 128;
+    private static final int TAG_SIZE = TAG_BITS / 8;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+    private static final String INDEX_FILE_NAME = "blobs.idx";
+    private static final String DATA_FILE_PREFIX = "blobs.";
+    private static final String DATA_FILE_SUFFIX = ".dat";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final class Entry {
+
+        private final long offset;
+        private final int length;
+
+        Entry(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final File dir;
+    private final SecureRandom random = new SecureRandom();
+    private SecretKeySpec key;
+    private byte[] salt;
+    private int iterations;
+
+    private final Map<String, Entry> index = new LinkedHashMap<>();
+    private long generation;
+    private long garbageBytes;
+
+    private RandomAccessFile dataFile;
+    private RandomAccessFile indexFile;
+
+    public EncryptedBlobStore(File dir, byte[] psd) throws IOException {
+        this(dir, psd, AESEngine.getDefault());
+    }
+
+    /**
+     * 打开或者创建存储
+     *
+     * @param dir    存储所在的目录，不存在时会被创建
+     * @param psd    密码
+     * @param engine 用于派生并缓存密钥
+     * @throws IOException 索引文件损坏或者无法派生密钥时抛出
+     * @throws UnsupportedOperationException 系统低于API 19时抛出
+     */
+    public EncryptedBlobStore(File dir, byte[] psd, AESEngine engine) throws IOException {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {// 尽早失败，以免在读写时才找不到GCMParameterSpec
+            throw new UnsupportedOperationException("EncryptedBlobStore需要API 19以上的系统");
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("无法创建目录：" + dir);
+        }
+        this.dir = dir;
+        open(psd, engine);
+    }
+
+	/* 索引 */
+
+    private File getDataFile(long generation) {
+        return new File(dir, DATA_FILE_PREFIX + generation + DATA_FILE_SUFFIX);
+    }
+
+    private void open(byte[] psd, AESEngine engine) throws IOException {
+        File idxFile = new File(dir, INDEX_FILE_NAME);
+        indexFile = new RandomAccessFile(idxFile, "rw");
+        try {
+            if (indexFile.length() == 0) {
+                generation = 0;
+                salt = new byte[SALT_SIZE];
+                random.nextBytes(salt);
+                iterations = DEFAULT_ITERATIONS;
+                indexFile.write(createHeader(generation));
+            } else {
+                replayIndex();
+            }
+            try {
+                key = engine.getPBKDF2Key(psd, salt, iterations);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+            dataFile = new RandomAccessFile(getDataFile(generation), "rw");
+            deleteStaleDataFiles();
+
+            // 数据文件中没有被索引引用的部分都是空洞，包括崩溃时写入了记录却没有写入索引的部分
+            long liveBytes = 0;
+            for (Entry entry : index.values()) {
+                liveBytes += entry.length;
+            }
+            garbageBytes = Math.max(dataFile.length() - liveBytes, 0);
+        } catch (IOException e) {
+            IOUtil.close(indexFile);
+            IOUtil.close(dataFile);
+            throw e;
+        }
+    }
+
+    private byte[] createHeader(long generation) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(20 + SALT_SIZE);
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(generation);
+        out.write(salt);
+        out.writeInt(iterations);
+        return bos.toByteArray();
+    }
+
+    /**
+     * 重放索引文件。最后一条记录可能因为写入时中断而不完整，此时截掉不完整的部分。
+     */
+    private void replayIndex() throws IOException {
+        long length = indexFile.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("索引文件过大：" + dir);
+        }
+        byte[] bytes = new byte[(int) length];
+        indexFile.seek(0);
+        indexFile.readFully(bytes);
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
+        DataInputStream in = new DataInputStream(bis);
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("不是有效的索引文件：" + dir);
+        }
+        generation = in.readLong();
+        salt = new byte[SALT_SIZE];
+        in.readFully(salt);
+        iterations = in.readInt();
+        if (iterations <= 0) {
+            throw new IOException("不是有效的索引文件：" + dir);
+        }
+
+        long validLength = length - bis.available();
+        try {
+            while (true) {
+                byte op = in.readByte();
+                String name = in.readUTF();
+                if (op == OP_PUT) {
+                    long offset = in.readLong();
+                    applyPut(name, new Entry(offset, in.readInt()));
+                } else if (op == OP_REMOVE) {
+                    applyRemove(name);
+                } else {
+                    break;
+                }
+                validLength = length - bis.available();
+            }
+        } catch (EOFException ignored) {
+        }
+
+        if (validLength < length) {
+            LogUtil.e("索引文件的末尾不完整，已截断：" + dir);
+            indexFile.setLength(validLength);
+        }
+        indexFile.seek(validLength);
+    }
+
+    private void deleteStaleDataFiles() {
+        String current = getDataFile(generation).getName();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(DATA_FILE_PREFIX) && name.endsWith(DATA_FILE_SUFFIX) && !name.equals(current)) {
+                file.delete();
+            }
+        }
+    }
+
+    private void applyPut(String name, Entry entry) {
+        Entry old = index.put(name, entry);
+        if (old != null) {
+            garbageBytes += old.length;
+        }
+    }
+
+    private void applyRemove(String name) {
+        Entry old = index.remove(name);
+        if (old != null) {
+            garbageBytes += old.length;
+        }
+    }
+
+    private void appendIndex(byte op, String name, Entry entry) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(name.length() + 16);
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeByte(op);
+        out.writeUTF(name);
+        if (entry != null) {
+            out.writeLong(entry.offset);
+            out.writeInt(entry.length);
+        }
+        long length = indexFile.length();
+        try {
+            indexFile.write(bos.toByteArray());
+        } catch (IOException e) {// 去掉写了一半的记录，以免之后追加的记录无法重放
+            indexFile.setLength(length);
+            indexFile.seek(length);
+            throw e;
+        }
+    }
+
+	/* 读写 */
+
+    /**
+     * 加密并写入记录，已存在时覆盖
+     *
+     * @param name
+     * @param value
+     * @throws IOException
+     * @throws IllegalArgumentException name按照{@link DataOutputStream#writeUTF(String)}编码之后超过65535字节时抛出
+     */
+    public void put(String name, byte[] value) throws IOException {
+        checkName(name);
+        byte[] nonce = new byte[NONCE_SIZE];
+        random.nextBytes(nonce);
+        byte[] record = new byte[NONCE_SIZE + value.length + TAG_SIZE];
+        System.arraycopy(nonce, 0, record, 0, NONCE_SIZE);
+        try {
+            Cipher cipher = initCipher(Cipher.ENCRYPT_MODE, name, nonce);
+            cipher.doFinal(value, 0, value.length, record, NONCE_SIZE);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+
+        synchronized (this) {
+            checkOpen();
+            long offset = dataFile.length();
+            FileChannel channel = dataFile.getChannel();
+            writeFully(channel, ByteBuffer.wrap(record), offset);
+            channel.force(false);// 记录落盘之后才能写入索引
+            Entry entry = new Entry(offset, record.length);
+            try {
+                appendIndex(OP_PUT, name, entry);
+            } catch (IOException e) {// 记录已经写入却没有索引，计入空洞以便整理时回收
+                garbageBytes += record.length;
+                throw e;
+            }
+            applyPut(name, entry);
+        }
+    }
+
+    /**
+     * 键在索引中以{@link DataOutputStream#writeUTF(String)}保存，必须在写入记录之前检查其编码之后的长度，
+     * 否则记录写入之后索引却无法追加。
+     */
+    private static void checkName(String name) {
+        long utfLength = 0;
+        char ch;
+        for (int i = 0, len = name.length(); i < len; i++) {
+            ch = name.charAt(i);
+            if (ch >= 0x0001 && ch <= 0x007F) {
+                utfLength++;
+            } else if (ch <= 0x07FF) {
+                utfLength += 2;
+            } else {
+                utfLength += 3;
+            }
+        }
+        if (utfLength > MAX_NAME_UTF_LENGTH) {
+            throw new IllegalArgumentException("键过长：" + utfLength + "字节");
+        }
+    }
+
+    public void putString(String name, String value) throws IOException {
+        put(name, value.getBytes(UTF_8));
+    }
+
+    /**
+     * 读取并解密单条记录
+     *
+     * @param name
+     * @return 记录不存在时返回null
+     * @throws IOException 记录损坏或者被篡改时抛出
+     */
+    @Nullable
+    public byte[] get(String name) throws IOException {
+        byte[] record;
+        synchronized (this) {
+            checkOpen();
+            Entry entry = index.get(name);
+            if (entry == null) {
+                return null;
+            }
+            record = new byte[entry.length];
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            FileChannel channel = dataFile.getChannel();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, entry.offset + buffer.position()) < 0) {
+                    throw new EOFException("记录不完整：" + name);
+                }
+            }
+        }
+
+        // 解密不需要持有锁
+        byte[] nonce = new byte[NONCE_SIZE];
+        System.arraycopy(record, 0, nonce, 0, NONCE_SIZE);
+        try {
+            Cipher cipher = initCipher(Cipher.DECRYPT_MODE, name, nonce);
+            return cipher.doFinal(record, NONCE_SIZE, record.length - NONCE_SIZE);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("记录校验失败：" + name, e);
+        }
+    }
+
+    @Nullable
+    public String getString(String name) throws IOException {
+        byte[] value = get(name);
+        return value != null ? new String(value, UTF_8) : null;
+    }
+
+    /**
+     * @param name
+     * @return 记录存在并被删除时返回true
+     * @throws IOException
+     */
+    public synchronized boolean remove(String name) throws IOException {
+        checkOpen();
+        if (!index.containsKey(name)) {
+            return false;
+        }
+        appendIndex(OP_REMOVE, name, null);
+        applyRemove(name);
+        return true;
+    }
+
+    public synchronized boolean contains(String name) {
+        return index.containsKey(name);
+    }
+
+    /**
+     * @return 所有记录的键，按照首次写入的顺序
+     */
+    public synchronized Set<String> getNames() {
+        return new LinkedHashSet<>(index.keySet());
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    private Cipher initCipher(int opmode, String name, byte[] nonce) throws GeneralSecurityException {
+        Cipher cipher = AESEngine.getLocalCipher(EncryptUtil.AES_MODE_GCM, EncryptUtil.AES_PADDING_NO);
+        cipher.init(opmode, key, new GCMParameterSpec(TAG_BITS, nonce));
+        cipher.updateAAD(name.getBytes(UTF_8));
+        return cipher;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+	/* 整理 */
+
+    /**
+     * @return 被覆盖或者删除的记录以及写入失败的记录在数据文件中占用的字节数
+     */
+    public synchronized long getGarbageBytes() {
+        return garbageBytes;
+    }
+
+    /**
+     * 将有效的记录拷贝到新的数据文件中并重写索引，回收被覆盖或者删除的记录占用的空间。
+     * 记录的密文与位置无关，整理时不需要重新加解密。
+     *
+     * @throws IOException
+     */
+    public synchronized void compact() throws IOException {
+        checkOpen();
+        long newGeneration = generation + 1;
+        File newDataFile = getDataFile(newGeneration);
+        File tmpIndexFile = new File(dir, INDEX_FILE_NAME + ".tmp");
+
+        Map<String, Entry> newIndex = new LinkedHashMap<>(index.size() * 4 / 3 + 1);
+        RandomAccessFile newData = new RandomAccessFile(newDataFile, "rw");
+        RandomAccessFile newIdx = null;
+        boolean succeed = false;
+        try {
+            newData.setLength(0);
+            FileChannel src = dataFile.getChannel();
+            FileChannel dst = newData.getChannel();
+            long position = 0;
+            for (Map.Entry<String, Entry> item : index.entrySet()) {
+                Entry entry = item.getValue();
+                long count = 0;
+                while (count < entry.length) {
+                    long transferred = src.transferTo(entry.offset + count, entry.length - count, dst);
+                    if (transferred <= 0) {
+                        throw new EOFException("记录不完整：" + item.getKey());
+                    }
+                    count += transferred;
+                }
+                newIndex.put(item.getKey(), new Entry(position, entry.length));
+                position += entry.length;
+            }
+            dst.force(false);
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bos);
+            out.write(createHeader(newGeneration));
+            for (Map.Entry<String, Entry> item : newIndex.entrySet()) {
+                out.writeByte(OP_PUT);
+                out.writeUTF(item.getKey());
+                out.writeLong(item.getValue().offset);
+                out.writeInt(item.getValue().length);
+            }
+            newIdx = new RandomAccessFile(tmpIndexFile, "rw");
+            newIdx.setLength(0);
+            newIdx.write(bos.toByteArray());
+            newIdx.getChannel().force(false);
+            IOUtil.close(newIdx);
+            newIdx = null;
+
+            // 重命名索引文件即提交，此后新一代的数据文件生效
+            IOUtil.close(indexFile);
+            indexFile = null;
+            if (!tmpIndexFile.renameTo(new File(dir, INDEX_FILE_NAME))) {
+                throw new IOException("无法替换索引文件：" + dir);
+            }
+            succeed = true;
+        } finally {
+            IOUtil.close(newIdx);
+            if (!succeed) {
+                IOUtil.close(newData);
+                newDataFile.delete();
+                tmpIndexFile.delete();
+                if (indexFile == null) {// 索引文件已经关闭，重新打开旧的
+                    indexFile = new RandomAccessFile(new File(dir, INDEX_FILE_NAME), "rw");
+                    indexFile.seek(indexFile.length());
+                }
+            }
+        }
+
+        IOUtil.close(dataFile);
+        getDataFile(generation).delete();
+        dataFile = newData;
+        indexFile = new RandomAccessFile(new File(dir, INDEX_FILE_NAME), "rw");
+        indexFile.seek(indexFile.length());
+        generation = newGeneration;
+        index.clear();
+        index.putAll(newIndex);
+        garbageBytes = 0;
+    }
+
+	/* 关闭 */
+
+    private void checkOpen() throws IOException {
+        if (dataFile == null) {
+            throw new IOException("存储已关闭");
+        }
+    }
+
+    /**
+     * 删除所有的记录以及存储的文件，之后该实例不再可用
+     */
+    public synchronized void destroy() {
+        close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(DATA_FILE_PREFIX)) {// 数据文件和索引文件使用同样的前缀
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        IOUtil.close(dataFile);
+        IOUtil.close(indexFile);
+        dataFile = null;
+        indexFile = null;
+        index.clear();
+    }
+}
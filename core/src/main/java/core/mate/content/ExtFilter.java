@@ -1,14 +1,11 @@
 package core.mate.content;
 
 import java.io.File;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
 
-import core.mate.util.FileUtil;
-
 /**
  * 按照文件拓展名过滤的Filter，如你所见，只针对文件进行过滤。
+ * 拓展名通过{@link ExtMatcher}匹配，不区分大小写。
  *
  * @author DrkCore
  * @since 2016年1月24日10:05:31
@@ -59,29 +56,34 @@ public class ExtFilter extends VisibleFilter {
 
 	/*配置*/
 
-	private final Set<String> extSet;
+	/**
+	 * 为null时不匹配任何文件
+	 */
+	private final ExtMatcher matcher;
 
+	/**
+	 * @param extSet 拓展名在构造时编译为{@link ExtMatcher}，之后对extSet的修改不会生效。为空时不匹配任何文件。
+	 */
 	public ExtFilter(Set<String> extSet) {
-		this.extSet = extSet;
+		this.matcher = extSet.isEmpty() ? null : new ExtMatcher(extSet);
 	}
 
 	public ExtFilter(String... exts) {
 		if (exts == null || exts.length == 0) {
 			throw new IllegalArgumentException();
 		}
-		extSet = new HashSet<>(exts.length);
-		Collections.addAll(extSet, exts);
+		matcher = new ExtMatcher(exts);
+	}
+
+	public ExtFilter(ExtMatcher matcher) {
+		this.matcher = matcher;
 	}
 
 	/*继承*/
 
 	@Override
 	public boolean accept (File file) {
-		String extName = null;
-		if (super.accept(file) && file.isFile()) {
-			extName = FileUtil.getExt(file);
-			extName = extName != null? extName.toLowerCase():null;
-		}
-		return extName != null && extSet.contains(extName);
+		// 先匹配路径，不需要访问文件系统
+		return matcher != null && matcher.matches(file.getPath()) && super.accept(file) && file.isFile();
 	}
 }
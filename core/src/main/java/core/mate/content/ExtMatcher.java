@@ -0,0 +1,126 @@
+package core.mate.content;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * 预先编译的拓展名匹配器。
+ * <p>
+ * 所有的拓展名倒序存放在一棵字典树中，匹配时从路径的末尾向前逐个字符比较，
+ * 不需要像{@link core.mate.util.FileUtil#getExt(String)}那样截取并转换拓展名，因而匹配的过程中不会创建任何对象。
+ * 比较时不区分大小写，支持“tar.gz”这样包含点号的拓展名。
+ * 拓展名的判断规则与{@link core.mate.util.FileUtil#getExt(String)}一致，即点号不能是文件名的第一个字符。
+ * <p>
+ * 该类实现了{@link FileFilter}，可以直接用于{@link core.mate.util.FileUtil#dumpFile(File, FileFilter)}
+ * 和{@link FileWalker}。作为过滤器时只检查路径，并不判断项目的类型和可见性，需要时请使用{@link ExtFilter}。
+ * 编译完成之后的实例是只读的，可以在多个线程之间共享。
+ *
+ * @author DrkCore
+ * @since 2017年2月15日20:36:15
+ */
+public final class ExtMatcher implements FileFilter {
+
+    private static final class Node {
+
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        /**
+         * 从根节点到这里的字符组成了一个完整的“.拓展名”
+         */
+        private boolean terminal;
+
+        Node child(char key) {
+            char[] keys = this.keys;
+            for (int i = 0, len = keys.length; i < len; i++) {
+                if (keys[i] == key) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node getOrCreateChild(char key) {
+            Node child = child(key);
+            if (child == null) {
+                int len = keys.length;
+                keys = Arrays.copyOf(keys, len + 1);
+                children = Arrays.copyOf(children, len + 1);
+                keys[len] = key;
+                child = children[len] = new Node();
+            }
+            return child;
+        }
+    }
+
+    private final Node root = new Node();
+
+    public ExtMatcher(String... exts) {
+        this(Arrays.asList(exts));
+    }
+
+    /**
+     * @param exts 不包括开头的点号，比如“txt”或者“tar.gz”
+     */
+    public ExtMatcher(Collection<String> exts) {
+        if (exts.isEmpty()) {
+            throw new IllegalArgumentException("拓展名不能为空");
+        }
+        for (String ext : exts) {
+            add(ext);
+        }
+    }
+
+    private void add(String ext) {
+        if (ext == null || ext.isEmpty() || ext.charAt(0) == '.' || ext.charAt(ext.length() - 1) == '.'
+                || ext.indexOf('/') != -1 || ext.indexOf(File.separatorChar) != -1) {
+            throw new IllegalArgumentException("拓展名不合法：" + ext);
+        }
+
+        ext = ext.toLowerCase(Locale.ENGLISH);
+        Node node = root;
+        for (int i = ext.length() - 1; i >= 0; i--) {
+            node = node.getOrCreateChild(ext.charAt(i));
+        }
+        node.getOrCreateChild('.').terminal = true;
+    }
+
+	/* 匹配 */
+
+    /**
+     * @param path 文件的路径或者文件名
+     * @return 文件名以其中的某个拓展名结尾时返回true
+     */
+    public boolean matches(CharSequence path) {
+        Node node = root;
+        int idx = path.length() - 1;
+        char ch;
+        while (idx > 0 && node != null) {
+            ch = Character.toLowerCase(path.charAt(idx));
+            if (ch == '/' || ch == File.separatorChar) {
+                return false;
+            }
+
+            node = node.child(ch);
+            if (node != null && node.terminal) {// 点号之前必须还有文件名
+                ch = path.charAt(idx - 1);
+                if (ch != '/' && ch != File.separatorChar) {
+                    return true;
+                }
+            }
+            idx--;
+        }
+        return false;
+    }
+
+    public boolean matches(File file) {
+        return matches(file.getPath());
+    }
+
+    @Override
+    public boolean accept(File file) {
+        return matches(file.getPath());
+    }
+}
@@ -0,0 +1,138 @@
+package core.mate.content;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import core.mate.util.AbsFileAppender;
+import core.mate.util.FileUtil;
+import core.mate.util.LogUtil;
+
+/**
+ * 逐个文件地移动项目，由{@link FileUtil#planMove(File, File, int, AbsFileAppender)}创建。
+ * <p>
+ * 创建时冲突已经处理完毕，目标目录和空的目标文件也已经创建好。每次调用{@link #moveNext()}移动一个文件：
+ * 能够重命名的文件直接重命名，否则复制并校验大小之后立刻删除源文件，因而额外占用的空间不超过一个文件的大小。
+ * 全部移动之后调用{@link #finish()}删除源项目中剩下的空目录；中途失败或者取消时调用{@link #rollback()}。
+ * <p>
+ * 该类不是线程安全的。
+ *
+ * @author DrkCore
+ * @since 2017年2月15日16:40:12
+ */
+public class FileMover {
+
+    private final File srcItem;
+    private final File targetItem;
+    private final List<File[]> transfers;
+
+    // 日志：已经完成的文件数，以及每个文件是否是通过重命名移动的
+    private final boolean[] renamed;
+    private int doneCount;
+
+    /**
+     * @param srcItem
+     * @param targetItem 新创建的目标项目，回滚时会被整个删除
+     * @param transfers  {目标文件, 源文件}，目标文件必须已经创建
+     */
+    public FileMover(File srcItem, File targetItem, List<File[]> transfers) {
+        this.srcItem = srcItem;
+        this.targetItem = targetItem;
+        this.transfers = transfers;
+        this.renamed = new boolean[transfers.size()];
+    }
+
+    public File getSrcItem() {
+        return srcItem;
+    }
+
+    public File getTargetItem() {
+        return targetItem;
+    }
+
+    /**
+     * @return 待移动的文件数，包括已经移动的文件
+     */
+    public int getFileCount() {
+        return transfers.size();
+    }
+
+    public boolean hasNext() {
+        return doneCount < transfers.size();
+    }
+
+    /**
+     * 移动下一个文件
+     *
+     * @return 复制的字节数，直接重命名时返回0
+     * @throws IOException 复制失败、校验失败或者无法删除源文件
+     */
+    public long moveNext() throws IOException {
+        File[] transfer = transfers.get(doneCount);
+        File dstFile = transfer[0];
+        File srcFile = transfer[1];
+        long length = 0;
+        if (srcFile.renameTo(dstFile)) {// 位于同一文件系统
+            renamed[doneCount] = true;
+        } else {
+            length = srcFile.length();
+            if (FileUtil.transferFile(dstFile, srcFile) != length || dstFile.length() != length) {
+                throw new IOException("文件校验失败：" + srcFile);
+            }
+            if (!srcFile.delete()) {
+                throw new IOException("无法删除源文件：" + srcFile);
+            }
+        }
+        doneCount++;
+        return length;
+    }
+
+    /**
+     * 全部文件移动之后调用，此时源目录下只剩下空的目录
+     */
+    public void finish() {
+        if (srcItem.isDirectory()) {
+            FileUtil.delete(srcItem);
+        }
+    }
+
+    /**
+     * 将已经移动的文件逆序移回原处。
+     * 全部成功移回时删除目标项目，否则保留目标项目以免丢失数据。
+     *
+     * @return 全部成功移回时返回true
+     */
+    public boolean rollback() {
+        boolean success = true;
+        File dstFile, srcFile;
+        for (int i = doneCount - 1; i >= 0; i--) {
+            dstFile = transfers.get(i)[0];
+            srcFile = transfers.get(i)[1];
+            if (renamed[i]) {
+                if (!dstFile.renameTo(srcFile)) {
+                    success = false;
+                }
+            } else {
+                try {
+                    long length = dstFile.length();
+                    if (FileUtil.transferFile(srcFile, dstFile) == length) {
+                        dstFile.delete();
+                    } else {
+                        success = false;
+                    }
+                } catch (IOException e) {
+                    LogUtil.e(e);
+                    success = false;
+                }
+            }
+        }
+        doneCount = 0;
+
+        if (success) {
+            FileUtil.delete(targetItem);
+        } else {
+            LogUtil.e("部分文件无法移回原处，保留目标项目：" + targetItem);
+        }
+        return success;
+    }
+}
@@ -0,0 +1,268 @@
+package core.mate.content;
+
+import android.support.annotation.IntDef;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 深度优先、惰性地遍历目录树的工具。
+ * <p>
+ * 与{@link core.mate.util.FileUtil#dumpFile(File, FileFilter)}不同，遍历过程中不会保存已经找到的文件，
+ * 只保存当前路径上每一层目录的子项目，因而内存占用只和目录的深度有关。
+ * 可以通过{@link #walk(Visitor)}以访问者的方式遍历，支持跳过子树和提前终止；
+ * 也可以直接当作{@link Iterable}使用，每次迭代时才会读取下一个项目。
+ * <p>
+ * 过滤器只作用于文件，当{@link #setIncludeDir(boolean)}为true时也作用于目录，
+ * 但是无论目录是否通过过滤都会继续深入。
+ * 与{@link File#isFile()}一致，管道、套接字等不是普通文件的项目不会被返回。
+ *
+ * @author DrkCore
+ * @since 2017年2月12日16:21:40
+ */
+public class FileWalker implements Iterable<File> {
+
+    /**
+     * 继续遍历
+     */
+    public static final int CONTINUE = 0;
+    /**
+     * 不再深入当前目录。在{@link Visitor#onVisitFile(File, int)}中返回时与{@link #CONTINUE}相同。
+     */
+    public static final int SKIP_SUBTREE = 1;
+    /**
+     * 终止整个遍历
+     */
+    public static final int TERMINATE = 2;
+
+    @IntDef({CONTINUE, SKIP_SUBTREE, TERMINATE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface VisitResult {
+    }
+
+    /**
+     * 不限制遍历深度
+     */
+    public static final int DEPTH_UNLIMITED = Integer.MAX_VALUE;
+
+    public static abstract class Visitor {
+
+        /**
+         * 进入目录之前回调。返回{@link #SKIP_SUBTREE}则不会遍历该目录下的项目。
+         *
+         * @param dir
+         * @param depth 根项目的深度为0
+         * @return
+         */
+        @VisitResult
+        public int onVisitDir(File dir, int depth) {
+            return CONTINUE;
+        }
+
+        @VisitResult
+        public abstract int onVisitFile(File file, int depth);
+    }
+
+	/* 配置 */
+
+    private final File root;
+    private FileFilter filter;
+    private int maxDepth = DEPTH_UNLIMITED;
+    private boolean allowHiddenDir;
+    private boolean includeDir;
+
+    public FileWalker(File root) {
+        this.root = root;
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    public FileWalker setFilter(@Nullable FileFilter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * 设置遍历的最大深度。根项目的深度为0，为0时只会访问根项目本身。
+     *
+     * @param maxDepth
+     * @return
+     */
+    public FileWalker setMaxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth不能小于0");
+        }
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * 设置是否进入{@link File#isHidden()}为true的目录，默认为false
+     *
+     * @param allowHiddenDir
+     * @return
+     */
+    public FileWalker setAllowHiddenDir(boolean allowHiddenDir) {
+        this.allowHiddenDir = allowHiddenDir;
+        return this;
+    }
+
+    /**
+     * 设置迭代时是否返回目录，默认为false
+     *
+     * @param includeDir
+     * @return
+     */
+    public FileWalker setIncludeDir(boolean includeDir) {
+        this.includeDir = includeDir;
+        return this;
+    }
+
+	/* 遍历 */
+
+    /**
+     * 使用访问者遍历目录树
+     *
+     * @param visitor
+     * @return 遍历被{@link #TERMINATE}终止时返回false
+     */
+    public boolean walk(Visitor visitor) {
+        Cursor cursor = new Cursor();
+        File item;
+        int depth;
+        while ((item = cursor.next()) != null) {
+            depth = cursor.depth();
+            if (item.isDirectory()) {
+                int result = filter == null || !includeDir || filter.accept(item) ? visitor.onVisitDir(item, depth) : CONTINUE;
+                if (result == TERMINATE) {
+                    return false;
+                } else if (result == CONTINUE) {
+                    cursor.descend(item);
+                }
+            } else if (item.isFile() && (filter == null || filter.accept(item))) {
+                if (visitor.onVisitFile(item, depth) == TERMINATE) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @NonNull
+    @Override
+    public Iterator<File> iterator() {
+        return new WalkIterator();
+    }
+
+    private class WalkIterator implements Iterator<File> {
+
+        private final Cursor cursor = new Cursor();
+        private File next;
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            File item;
+            while ((item = cursor.next()) != null) {
+                boolean isDir = item.isDirectory();
+                if (isDir) {
+                    cursor.descend(item);
+                }
+                if ((isDir ? includeDir : item.isFile()) && (filter == null || filter.accept(item))) {
+                    next = item;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public File next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            File item = next;
+            next = null;
+            return item;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * 记录遍历位置的游标，以先序返回所有存在的项目。
+     * 只有调用{@link #descend(File)}之后才会读取目录下的项目。
+     */
+    private class Cursor {
+
+        private final ArrayList<File[]> levels = new ArrayList<>();
+        private int[] indexes = new int[8];
+        private boolean rootVisited;
+
+        File next() {
+            if (!rootVisited) {
+                rootVisited = true;
+                return root.exists() && (!root.isDirectory() || allowHidden(root)) ? root : null;
+            }
+
+            int top;
+            File[] items;
+            while ((top = levels.size() - 1) >= 0) {
+                items = levels.get(top);
+                while (indexes[top] < items.length) {
+                    File item = items[indexes[top]];
+                    items[indexes[top]++] = null;// 已经返回的项目不再持有
+                    if (!item.isDirectory() || allowHidden(item)) {
+                        return item;
+                    }
+                }
+                levels.remove(top);
+            }
+            return null;
+        }
+
+        /**
+         * @return 上一次{@link #next()}返回的项目的深度
+         */
+        int depth() {
+            return levels.size();
+        }
+
+        void descend(File dir) {
+            if (levels.size() >= maxDepth) {
+                return;
+            }
+            File[] items = dir.listFiles();
+            if (items == null || items.length == 0) {
+                return;
+            }
+
+            int level = levels.size();
+            if (level == indexes.length) {
+                int[] newIndexes = new int[level * 2];
+                System.arraycopy(indexes, 0, newIndexes, 0, level);
+                indexes = newIndexes;
+            }
+            indexes[level] = 0;
+            levels.add(items);
+        }
+
+        private boolean allowHidden(File dir) {
+            return allowHiddenDir || !dir.isHidden();
+        }
+    }
+}
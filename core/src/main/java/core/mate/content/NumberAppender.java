@@ -1,11 +1,23 @@
 package core.mate.content;
 
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 import core.mate.util.AbsFileAppender;
 import core.mate.util.FileUtil;
 import core.mate.util.LogUtil;
 
 /**
  * 使用数字作为tag的appender
+ * <p>
+ * 查找可用的项目时只会列出一次所在目录，从中找出所有已被占用的数字，再直接得到最小的可用数字，
+ * 而不是逐个数字地判断项目是否存在。
+ * 在{@link #beginBatch()}和{@link #endBatch()}之间，同一线程对同一目录的查找会复用已经得到的结果。
  *
  * @author DrkCore
  * @since 2015年9月26日15:30:28
@@ -30,6 +42,25 @@ public class NumberAppender extends AbsFileAppender {
 
 	/* 继承 */
 
+    @Override
+    public File nextFile(File file) {
+        if (!file.exists()) {
+            return file;
+        }
+        String name = file.getName();
+        String ext = FileUtil.getExt(name);
+        String baseName = ext != null ? name.substring(0, name.length() - ext.length() - 1) : name;
+        return next(file.getAbsoluteFile().getParentFile(), baseName, ext);
+    }
+
+    @Override
+    public File nextDir(File dir) {
+        if (!dir.exists()) {
+            return dir;
+        }
+        return next(dir.getAbsoluteFile().getParentFile(), dir.getName(), null);
+    }
+
     @Override
     protected String appendFile(String path) {
         String ext = FileUtil.getExt(path);
@@ -72,4 +103,154 @@ public class NumberAppender extends AbsFileAppender {
 
         return builder.toString();
     }
+
+	/* 查找可用的数字 */
+
+    /**
+     * 在dir中查找最小的可用数字，与逐个调用{@link #appendFile(String)}并使用{@link File#exists()}判断得到的结果一致。
+     * 与{@link File#exists()}一样区分大小写地比较名称，在不区分大小写的文件系统上由最后的确认保证不会重名。
+     *
+     * @param dir
+     * @param baseName 不包括拓展名的名称，可能已经带有“(n)”
+     * @param ext      小写的拓展名，目录为null
+     * @return
+     */
+    private File next(File dir, String baseName, @Nullable String ext) {
+        // 去掉已有的数字，从其下一个数字开始查找
+        int start = 1;
+        int num = parseNumber(baseName, baseName.length());
+        if (num != -1) {
+            baseName = baseName.substring(0, baseName.lastIndexOf('('));
+            start = num + 1;
+        }
+
+        String suffix = ext != null ? ")." + ext : ")";
+        DirState state = getDirState(dir);
+        Set<Integer> used = state.getUsedNumbers(baseName, suffix);
+
+        File target;
+        int n = start;
+        while (true) {
+            while (used.contains(n)) {
+                n++;
+            }
+            target = new File(dir, baseName + '(' + n + suffix);
+            used.add(n);
+            if (!target.exists()) {// 目录的状态可能已经过期，确认一次
+                return target;
+            }
+        }
+    }
+
+    /**
+     * 解析名称末尾“(n)”中的数字
+     *
+     * @param name
+     * @param end  “)”之后的位置
+     * @return 不存在合法的数字，或者数字不小于{@link Integer#MAX_VALUE}而无法再加一时返回-1
+     */
+    private static int parseNumber(String name, int end) {
+        if (end < 3 || name.charAt(end - 1) != ')') {
+            return -1;
+        }
+        int left = name.lastIndexOf('(', end - 2);
+        if (left == -1 || end - 1 - left <= 1 || end - 1 - left > 11) {// 最多10位数字
+            return -1;
+        }
+
+        long num = 0;
+        char ch;
+        for (int i = left + 1; i < end - 1; i++) {
+            ch = name.charAt(i);
+            if (ch < '0' || ch > '9') {
+                return -1;
+            }
+            num = num * 10 + (ch - '0');
+        }
+        return num < Integer.MAX_VALUE ? (int) num : -1;
+    }
+
+	/* 批量操作 */
+
+    private final ThreadLocal<Map<String, DirState>> batchStates = new ThreadLocal<>();
+    private final ThreadLocal<int[]> batchDepth = new ThreadLocal<>();
+
+    @Override
+    public void beginBatch() {
+        int[] depth = batchDepth.get();
+        if (depth == null) {
+            depth = new int[1];
+            batchDepth.set(depth);
+            batchStates.set(new HashMap<>());
+        }
+        depth[0]++;
+    }
+
+    @Override
+    public void endBatch() {
+        int[] depth = batchDepth.get();
+        if (depth != null && --depth[0] <= 0) {
+            batchDepth.remove();
+            batchStates.remove();
+        }
+    }
+
+    private DirState getDirState(File dir) {
+        Map<String, DirState> states = batchStates.get();
+        if (states == null) {
+            return new DirState(dir);
+        }
+
+        String path = dir.getPath();
+        DirState state = states.get(path);
+        if (state == null) {
+            state = new DirState(dir);
+            states.put(path, state);
+        }
+        return state;
+    }
+
+    /**
+     * 目录中已被占用的数字，只在第一次需要时列出目录
+     */
+    private static class DirState {
+
+        private final File dir;
+        private String[] names;
+        private final Map<String, Set<Integer>> usedNumbers = new HashMap<>();
+
+        DirState(File dir) {
+            this.dir = dir;
+        }
+
+        Set<Integer> getUsedNumbers(String baseName, String suffix) {
+            String key = baseName + '/' + suffix;
+            Set<Integer> used = usedNumbers.get(key);
+            if (used != null) {
+                return used;
+            }
+
+            if (names == null) {
+                names = dir.list();
+                names = names != null ? names : new String[0];
+            }
+
+            used = new HashSet<>();
+            String prefix = baseName + '(';
+            int prefixLen = prefix.length();
+            int suffixLen = suffix.length();
+            int num;
+            for (String name : names) {
+                int len = name.length();
+                if (len > prefixLen + suffixLen && name.startsWith(prefix) && name.endsWith(suffix)) {
+                    num = parseNumber(name, len - suffixLen + 1);
+                    if (num != -1 && name.lastIndexOf('(', len - suffixLen - 1) == prefixLen - 1) {
+                        used.add(num);
+                    }
+                }
+            }
+            usedNumbers.put(key, used);
+            return used;
+        }
+    }
 }
@@ -0,0 +1,89 @@
+package core.mate.content;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 目录同步的变更报告，由{@link core.mate.util.FileUtil#sync(File, File, boolean, String)}返回。
+ * 报告中的项目均为目标目录下的项目。
+ *
+ * @author DrkCore
+ * @since 2017年2月13日15:33:08
+ */
+public class SyncReport {
+
+    private final List<File> addedItems = new ArrayList<>();
+    private final List<File> updatedItems = new ArrayList<>();
+    private final List<File> removedItems = new ArrayList<>();
+    private int unchangedCount;
+    private long copiedBytes;
+
+    public void onAdded(File item, long bytes) {
+        addedItems.add(item);
+        copiedBytes += bytes;
+    }
+
+    public void onUpdated(File item, long bytes) {
+        updatedItems.add(item);
+        copiedBytes += bytes;
+    }
+
+    public void onRemoved(File item) {
+        removedItems.add(item);
+    }
+
+    public void onUnchanged() {
+        unchangedCount++;
+    }
+
+	/* 结果 */
+
+    /**
+     * @return 新增的文件和目录
+     */
+    public List<File> getAddedItems() {
+        return addedItems;
+    }
+
+    /**
+     * @return 内容发生了变化而被重新复制的文件
+     */
+    public List<File> getUpdatedItems() {
+        return updatedItems;
+    }
+
+    /**
+     * @return 源目录中已经不存在而被删除的项目
+     */
+    public List<File> getRemovedItems() {
+        return removedItems;
+    }
+
+    /**
+     * @return 没有变化而被跳过的文件数
+     */
+    public int getUnchangedCount() {
+        return unchangedCount;
+    }
+
+    /**
+     * @return 实际写入的字节数
+     */
+    public long getCopiedBytes() {
+        return copiedBytes;
+    }
+
+    public boolean hasChanges() {
+        return !addedItems.isEmpty() || !updatedItems.isEmpty() || !removedItems.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "SyncReport{added=" + addedItems.size()
+                + ", updated=" + updatedItems.size()
+                + ", removed=" + removedItems.size()
+                + ", unchanged=" + unchangedCount
+                + ", copiedBytes=" + copiedBytes + '}';
+    }
+}
@@ -92,7 +92,7 @@ public final class TextBuilder {
     }
 
     public TextBuilder appendHex(byte... bytes) {
-        append(EncodeUtil.toHexString(bytes));
+        EncodeUtil.appendHex(stringBuilder, false, bytes, 0, bytes.length);
         return this;
     }
 
@@ -0,0 +1,161 @@
+package core.mate.content;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import core.mate.util.DigestUtil;
+import core.mate.util.EncodeUtil;
+
+/**
+ * 分块的文件摘要，由{@link DigestUtil#treeDigest(String, java.io.File, int, int)}计算得到。
+ * <p>
+ * 文件按照固定的大小分块，每块各自计算摘要，根摘要是所有块的摘要依次拼接之后再计算的摘要。
+ * 因而根摘要与直接对整个文件计算的摘要并不相同，只能与同样算法和分块大小的结果比较。
+ * 块的摘要可以用于只校验文件的一部分，比如断点续传时只重新下载校验失败的块。
+ *
+ * @author DrkCore
+ * @since 2017年2月17日10:05:26
+ */
+public class TreeDigest {
+
+    private final String algorithm;
+    private final int chunkSize;
+    private final long length;
+    private final byte[][] chunkDigests;
+    private final byte[] rootDigest;
+
+    /**
+     * @param algorithm
+     * @param chunkSize
+     * @param length       文件的长度
+     * @param chunkDigests 按顺序排列的块的摘要，根摘要由此计算
+     */
+    public TreeDigest(String algorithm, int chunkSize, long length, byte[][] chunkDigests) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize必须大于0");
+        }
+        if (chunkDigests.length != getChunkCount(length, chunkSize)) {
+            throw new IllegalArgumentException("块的数量与文件的长度不符");
+        }
+        this.algorithm = algorithm;
+        this.chunkSize = chunkSize;
+        this.length = length;
+        this.chunkDigests = chunkDigests.clone();
+
+        MessageDigest digest = DigestUtil.getInstance(algorithm);
+        for (byte[] chunkDigest : chunkDigests) {
+            digest.update(chunkDigest);
+        }
+        this.rootDigest = digest.digest();
+    }
+
+    /**
+     * @return 长度为length的文件按照chunkSize分块的数量，空文件为0
+     */
+    public static int getChunkCount(long length, int chunkSize) {
+        long count = (length + chunkSize - 1) / chunkSize;
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("分块过多");
+        }
+        return (int) count;
+    }
+
+	/* 结果 */
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public int getChunkCount() {
+        return chunkDigests.length;
+    }
+
+    /**
+     * @param index
+     * @return 块在文件中的起始位置
+     */
+    public long getChunkOffset(int index) {
+        return (long) index * chunkSize;
+    }
+
+    /**
+     * @param index
+     * @return 块的长度，只有最后一块可能小于chunkSize
+     */
+    public int getChunkLength(int index) {
+        return (int) Math.min(chunkSize, length - getChunkOffset(index));
+    }
+
+    public byte[] getChunkDigest(int index) {
+        return chunkDigests[index].clone();
+    }
+
+    public String getChunkHex(int index) {
+        return EncodeUtil.toHexString(chunkDigests[index]);
+    }
+
+    public byte[] getRootDigest() {
+        return rootDigest.clone();
+    }
+
+    public String getRootHex() {
+        return EncodeUtil.toHexString(rootDigest);
+    }
+
+	/* 比较 */
+
+    /**
+     * @param index
+     * @param chunkDigest
+     * @return 块的摘要是否一致
+     */
+    public boolean matchesChunk(int index, byte[] chunkDigest) {
+        return MessageDigest.isEqual(chunkDigests[index], chunkDigest);
+    }
+
+    /**
+     * @param other
+     * @return 算法、分块大小和根摘要均一致时返回true
+     */
+    public boolean matches(TreeDigest other) {
+        return algorithm.equals(other.algorithm) && chunkSize == other.chunkSize
+                && length == other.length && MessageDigest.isEqual(rootDigest, other.rootDigest);
+    }
+
+    /**
+     * 找出与expected不一致的块。长度不同时超出的部分也视为不一致。
+     *
+     * @param expected 算法和分块大小必须一致
+     * @return 不一致的块的下标，以expected为准
+     */
+    public List<Integer> diffChunks(TreeDigest expected) {
+        if (!algorithm.equals(expected.algorithm) || chunkSize != expected.chunkSize) {
+            throw new IllegalArgumentException("算法或者分块大小不一致");
+        }
+
+        List<Integer> result = new ArrayList<>();
+        int count = expected.getChunkCount();
+        for (int i = 0; i < count; i++) {
+            if (i >= chunkDigests.length || expected.getChunkLength(i) != getChunkLength(i)
+                    || !MessageDigest.isEqual(chunkDigests[i], expected.chunkDigests[i])) {
+                result.add(i);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "TreeDigest{" + algorithm + ", chunkSize=" + chunkSize
+                + ", chunks=" + chunkDigests.length + ", root=" + getRootHex() + '}';
+    }
+}
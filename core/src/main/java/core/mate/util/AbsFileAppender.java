@@ -15,7 +15,10 @@ public abstract class AbsFileAppender {
     }
 
     public File nextFile(File file) {
-        return !file.exists() ? file : nextFile(appendFile(file.getAbsolutePath()));
+        while (file.exists()) {
+            file = new File(appendFile(file.getAbsolutePath()));
+        }
+        return file;
     }
 
     public File nextDir(String path) {
@@ -23,10 +26,28 @@ public abstract class AbsFileAppender {
     }
 
     public File nextDir(File dir) {
-        return !dir.exists() ? dir : nextDir(appendDir(dir.getAbsolutePath()));
+        while (dir.exists()) {
+            dir = new File(appendDir(dir.getAbsolutePath()));
+        }
+        return dir;
     }
 
     protected abstract String appendFile(String path);
 
     protected abstract String appendDir(String path);
+
+	/* 批量操作 */
+
+    /**
+     * 在{@link FileUtil}开始批量复制或者移动项目之前回调，可以在此期间缓存目录的状态。
+     * 可能嵌套调用，每次调用都对应一次{@link #endBatch()}。
+     */
+    public void beginBatch() {
+    }
+
+    /**
+     * 批量操作结束时回调，此时应当释放{@link #beginBatch()}之后缓存的状态。
+     */
+    public void endBatch() {
+    }
 }
@@ -0,0 +1,193 @@
+package core.mate.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 线程安全的IO缓冲区池，用于减少流操作中反复创建缓冲数组带来的GC压力。
+ * <p>
+ * 缓冲区按照大小分为4KB到256KB的若干级，申请时返回不小于所需大小的最小一级。
+ * 超过最大一级的申请直接创建新的数组，归还时也不会被缓存。
+ * 池中缓存的总内存不会超过{@link #setMaxPoolBytes(long)}设置的上限，超出时归还的缓冲区会被直接丢弃。
+ * <p>
+ * 使用方式：
+ * <pre>
+ * byte[] buffer = BufferPool.acquireBytes(BufferPool.DEFAULT_BUFFER_SIZE);
+ * try {
+ *     ...
+ * } finally {
+ *     BufferPool.release(buffer);
+ * }
+ * </pre>
+ * 归还之后请不要再持有或使用该缓冲区。
+ *
+ * @author DrkCore
+ * @since 2017年2月14日20:05:47
+ */
+public final class BufferPool {
+
+    private BufferPool() {
+    }
+
+    /**
+     * 流操作默认使用的缓冲区大小
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    private static final int MIN_CLASS_SHIFT = 12;// 4KB
+    private static final int MAX_CLASS_SHIFT = 18;// 256KB
+    private static final int CLASS_COUNT = MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1;
+
+    @SuppressWarnings("unchecked")
+    private static final ConcurrentLinkedQueue<byte[]>[] BYTE_POOLS = new ConcurrentLinkedQueue[CLASS_COUNT];
+    @SuppressWarnings("unchecked")
+    private static final ConcurrentLinkedQueue<char[]>[] CHAR_POOLS = new ConcurrentLinkedQueue[CLASS_COUNT];
+
+    static {
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            BYTE_POOLS[i] = new ConcurrentLinkedQueue<>();
+            CHAR_POOLS[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    private static final AtomicLong pooledBytes = new AtomicLong();
+    private static volatile long maxPoolBytes = 1024 * 1024;
+
+    /**
+     * 设置池中最多缓存的内存大小，默认为1MB。设为0表示不再缓存。
+     *
+     * @param maxPoolBytes
+     */
+    public static void setMaxPoolBytes(long maxPoolBytes) {
+        if (maxPoolBytes < 0) {
+            throw new IllegalArgumentException("maxPoolBytes不能小于0");
+        }
+        BufferPool.maxPoolBytes = maxPoolBytes;
+        if (pooledBytes.get() > maxPoolBytes) {
+            clear();
+        }
+    }
+
+    public static long getMaxPoolBytes() {
+        return maxPoolBytes;
+    }
+
+    /**
+     * @return 当前池中缓存的内存大小
+     */
+    public static long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * 清空池中缓存的所有缓冲区
+     */
+    public static void clear() {
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            byte[] bytes;
+            while ((bytes = BYTE_POOLS[i].poll()) != null) {
+                pooledBytes.addAndGet(-bytes.length);
+            }
+            char[] chars;
+            while ((chars = CHAR_POOLS[i].poll()) != null) {
+                pooledBytes.addAndGet(-2L * chars.length);
+            }
+        }
+    }
+
+	/* 申请和归还 */
+
+    /**
+     * 申请字节缓冲区，数组的长度不小于minSize，内容是不确定的。
+     *
+     * @param minSize
+     * @return
+     */
+    public static byte[] acquireBytes(int minSize) {
+        int idx = classIndex(minSize);
+        if (idx < 0) {
+            return new byte[minSize];
+        }
+
+        byte[] bytes = BYTE_POOLS[idx].poll();
+        if (bytes != null) {
+            pooledBytes.addAndGet(-bytes.length);
+            return bytes;
+        }
+        return new byte[classSize(idx)];
+    }
+
+    /**
+     * 申请字符缓冲区，数组的长度不小于minSize，内容是不确定的。
+     *
+     * @param minSize
+     * @return
+     */
+    public static char[] acquireChars(int minSize) {
+        int idx = classIndex(minSize);
+        if (idx < 0) {
+            return new char[minSize];
+        }
+
+        char[] chars = CHAR_POOLS[idx].poll();
+        if (chars != null) {
+            pooledBytes.addAndGet(-2L * chars.length);
+            return chars;
+        }
+        return new char[classSize(idx)];
+    }
+
+    public static void release(byte[] bytes) {
+        int idx = exactClassIndex(bytes.length);
+        if (idx >= 0 && reserve(bytes.length)) {
+            BYTE_POOLS[idx].offer(bytes);
+        }
+    }
+
+    public static void release(char[] chars) {
+        int idx = exactClassIndex(chars.length);
+        if (idx >= 0 && reserve(2L * chars.length)) {
+            CHAR_POOLS[idx].offer(chars);
+        }
+    }
+
+	/* 内部 */
+
+    private static boolean reserve(long size) {
+        long current;
+        do {
+            current = pooledBytes.get();
+            if (current + size > maxPoolBytes) {
+                return false;
+            }
+        } while (!pooledBytes.compareAndSet(current, current + size));
+        return true;
+    }
+
+    private static int classSize(int idx) {
+        return 1 << (idx + MIN_CLASS_SHIFT);
+    }
+
+    /**
+     * @return 能容纳size的最小一级，超过最大一级时返回-1
+     */
+    private static int classIndex(int size) {
+        if (size <= 1 << MIN_CLASS_SHIFT) {
+            return 0;
+        } else if (size > 1 << MAX_CLASS_SHIFT) {
+            return -1;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_CLASS_SHIFT;
+    }
+
+    /**
+     * @return 长度恰好等于某一级时返回其下标，否则返回-1
+     */
+    private static int exactClassIndex(int length) {
+        if (Integer.bitCount(length) != 1) {
+            return -1;
+        }
+        int shift = Integer.numberOfTrailingZeros(length);
+        return shift >= MIN_CLASS_SHIFT && shift <= MAX_CLASS_SHIFT ? shift - MIN_CLASS_SHIFT : -1;
+    }
+}
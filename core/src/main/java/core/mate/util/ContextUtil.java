@@ -23,14 +23,11 @@ import android.view.animation.AnimationUtils;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.charset.Charset;
 
 import core.mate.Core;
-import core.mate.content.TextBuilder;
+import core.mate.content.AssetExtractor;
 
 import static android.content.pm.PackageManager.GET_UNINSTALLED_PACKAGES;
 import static android.content.pm.PackageManager.MATCH_UNINSTALLED_PACKAGES;
@@ -333,6 +330,10 @@ public final class ContextUtil {
      * <b>注意，由于Android本身不提供判断assets目录下的项目是文件还是目录所以这里使用的判定的规则是
      * {@link AssetManager#list(String)}返回的数组长度不为0则为目录，否则即是文件。
      * 因此assetsDir目录和其子目录不允许为空！</b>
+     * <p>
+     * 导出通过{@link AssetExtractor}并发进行，并且会跳过上一次导出之后没有变化的文件，具体请参阅该类的说明。
+     * 为了兼容已经导出的文件，子目录依旧以其完整路径创建在上一层目录之下，即myDir/sub导出为dstDir/myDir/myDir/sub。
+     * 需要按照assets中的结构导出时请直接使用{@link AssetExtractor}。
      *
      * @param assetDir
      * @param dstDir
@@ -341,31 +342,7 @@ public final class ContextUtil {
      * @throws IOException
      */
     public static File exportAssetDir(String assetDir, File dstDir, boolean cover) throws IOException {
-        AssetManager assetMgr = ContextUtil.getAssets();
-        String[] assets = assetMgr.list(assetDir);
-        if (assets != null && assets.length > 0) {// assetsDir是目录且里面有东西
-            // 在dstDir目录下创建assetDir目录
-            File dstAssetDir = FileUtil.getOrCreateDir(new File(dstDir, assetDir));
-
-            TextBuilder textBuilder = new TextBuilder(3 * assetDir.length() + 1);
-            String[] itemAssets;
-            for (String item : assets) {
-                //检查assert中的子项目是目录还是文件
-                item = textBuilder.buildString(assetDir, '/', item);
-                itemAssets = assetMgr.list(item);
-                if (itemAssets != null) {
-                    if (itemAssets.length > 0) {// 子项目是目录
-                        exportAssetDir(item, dstAssetDir, cover);// 递归
-                    } else {// 文件
-                        exportAssetFile(item, dstAssetDir, cover);
-                    }
-                }
-            }
-            //一切顺利，返回导出后的assetDir对应的目录
-            return dstAssetDir;
-        } else {// 为空直接抛出异常
-            throw new IllegalStateException(assetDir + "为空！");
-        }
+        return new AssetExtractor().setCover(cover).setLegacyLayout(true).extract(assetDir, dstDir);
     }
 
     /**
@@ -403,18 +380,8 @@ public final class ContextUtil {
             return dstFile;
         }
 
-        AssetManager assetMgr = ContextUtil.getAssets();
-        InputStream in = null;
-        OutputStream out = null;
-        try {
-            in = assetMgr.open(asset);
-            out = new FileOutputStream(dstFile);
-            IOUtil.write(out, in);
-            return dstFile;
-        } finally {
-            IOUtil.close(in);
-            IOUtil.close(out);
-        }
+        AssetExtractor.writeAsset(ContextUtil.getAssets(), asset, dstFile, null);
+        return dstFile;
     }
 
     /*Intent*/
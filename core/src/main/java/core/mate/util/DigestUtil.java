@@ -2,13 +2,31 @@ package core.mate.util;
 
 import android.support.annotation.Nullable;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import core.mate.async.IOExecutor;
+import core.mate.content.DigestResult;
+import core.mate.content.TreeDigest;
 
 /**
  * 封装获取数据摘要的方法的工具类。
@@ -23,6 +41,43 @@ public class DigestUtil {
 
 	/* 获取摘要 */
 
+    /**
+     * 创建指定算法的{@link MessageDigest}
+     *
+     * @param algorithm
+     * @return
+     * @throws IllegalStateException 不支持该算法时抛出
+     */
+    public static MessageDigest getInstance(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            LogUtil.e(e);
+            throw new IllegalStateException("无法初始化" + algorithm + "算法");
+        }
+    }
+
+    /**
+     * 获取当前线程缓存的{@link MessageDigest}，首次获取时才会创建，之后总是返回重置过的同一个实例。
+     * <b>返回的实例只能在当前线程中临时使用，请不要持有，
+     * 也不要在使用期间调用DigestUtil中的其他方法，否则该实例可能会被重置。</b>
+     *
+     * @param algorithm
+     * @return
+     * @throws IllegalStateException 不支持该算法时抛出
+     */
+    public static MessageDigest getLocalInstance(String algorithm) {
+        Map<String, MessageDigest> digests = LOCAL_CACHE.get().digests;
+        MessageDigest digest = digests.get(algorithm);
+        if (digest == null) {
+            digest = getInstance(algorithm);
+            digests.put(algorithm, digest);
+        } else {
+            digest.reset();
+        }
+        return digest;
+    }
+
     /**
      * 使用{@link Charset#defaultCharset()}默认编码，在Android上也就是UTF-8获取字符串的字节数组，
      * 再计算其摘要。摘要默认为小写。
@@ -45,7 +100,15 @@ public class DigestUtil {
      * @return
      */
     public static String digest(String algorithm, String str, @Nullable Charset charset) {
-        return digest(algorithm, str.getBytes(charset != null ? charset : Charset.defaultCharset()));
+        charset = charset != null ? charset : Charset.defaultCharset();
+        if (UTF_8.equals(charset) && str.length() <= MAX_LOCAL_CHARS) {// 直接编码到线程缓存的数组中
+            LocalCache cache = LOCAL_CACHE.get();
+            int len = cache.encodeUTF8(str);
+            MessageDigest digest = getLocalInstance(algorithm);
+            digest.update(cache.bytes, 0, len);
+            return cache.toHexString(digest);
+        }
+        return digest(algorithm, str.getBytes(charset));
     }
 
     /**
@@ -56,14 +119,9 @@ public class DigestUtil {
      * @return
      */
     public static String digest(String algorithm, byte[] bytes) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance(algorithm);
-            digest.reset();
-            return EncodeUtil.toHexString(digest.digest(bytes));
-        } catch (NoSuchAlgorithmException e) {
-            LogUtil.e(e);
-            throw new IllegalStateException("无法初始化" + algorithm + "算法");
-        }
+        MessageDigest digest = getLocalInstance(algorithm);
+        digest.update(bytes);
+        return LOCAL_CACHE.get().toHexString(digest);
     }
 
     /**
@@ -88,19 +146,342 @@ public class DigestUtil {
      */
     public static String digest(String algorithm, InputStream in) throws IOException {
         try {
-            MessageDigest digest = MessageDigest.getInstance(algorithm);
-            digest.reset();
-            byte[] buff = new byte[1024];
+            MessageDigest digest = getLocalInstance(algorithm);
+            byte[] buff = BufferPool.acquireBytes(BufferPool.DEFAULT_BUFFER_SIZE);
+            try {
+                int len;
+                while ((len = (in.read(buff))) != -1) {
+                    digest.update(buff, 0, len);
+                }
+            } finally {
+                BufferPool.release(buff);
+            }
+            return LOCAL_CACHE.get().toHexString(digest);
+        } finally {
+            IOUtil.close(in);
+        }
+    }
+
+	/* 多种摘要 */
+
+    private static final int MULTI_DIGEST_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 只读取一次文件，同时计算多种算法的摘要
+     *
+     * @param file
+     * @param algorithms 重复的算法只计算一次
+     * @return
+     * @throws IOException
+     */
+    public static DigestResult digestAll(File file, String... algorithms) throws IOException {
+        return digestAll(new FileInputStream(file), algorithms);
+    }
+
+    /**
+     * 只读取一次输入流，同时计算多种算法的摘要。结束后会关闭in。
+     *
+     * @param in
+     * @param algorithms 重复的算法只计算一次
+     * @return
+     * @throws IOException
+     */
+    public static DigestResult digestAll(InputStream in, String... algorithms) throws IOException {
+        try {
+            MessageDigest[] digests = getLocalInstances(algorithms);
+            update(digests, in, null);
+            return new DigestResult(digests);
+        } finally {
+            IOUtil.close(in);
+        }
+    }
+
+    /**
+     * 读取in中剩余的所有数据并交给每个摘要，out不为null时同时将数据写入out。该方法不会关闭流。
+     *
+     * @param digests
+     * @param in
+     * @param out     可以为null
+     * @throws IOException
+     */
+    static void update(MessageDigest[] digests, InputStream in, @Nullable OutputStream out) throws IOException {
+        byte[] buff = BufferPool.acquireBytes(MULTI_DIGEST_BUFFER_SIZE);
+        try {
+            int len;
+            while ((len = in.read(buff)) != -1) {
+                for (MessageDigest digest : digests) {
+                    digest.update(buff, 0, len);
+                }
+                if (out != null) {
+                    out.write(buff, 0, len);
+                }
+            }
+        } finally {
+            BufferPool.release(buff);
+        }
+    }
+
+    /**
+     * 同时计算buffer中剩余数据的多种摘要，不会改变buffer的位置。
+     * 适用于{@link IOUtil#map(File)}映射的文件。
+     *
+     * @param buffer
+     * @param algorithms 重复的算法只计算一次
+     * @return
+     */
+    public static DigestResult digestAll(ByteBuffer buffer, String... algorithms) {
+        MessageDigest[] digests = getLocalInstances(algorithms);
+        if (buffer.hasArray()) {// 直接使用堆上的数组
+            byte[] array = buffer.array();
+            int offset = buffer.arrayOffset() + buffer.position();
+            for (MessageDigest digest : digests) {
+                digest.update(array, offset, buffer.remaining());
+            }
+        } else {// 每段数据只复制一次，再交给所有的摘要
+            ByteBuffer src = buffer.duplicate();
+            byte[] buff = BufferPool.acquireBytes(MULTI_DIGEST_BUFFER_SIZE);
+            try {
+                int len;
+                while ((len = Math.min(buff.length, src.remaining())) > 0) {
+                    src.get(buff, 0, len);
+                    for (MessageDigest digest : digests) {
+                        digest.update(buff, 0, len);
+                    }
+                }
+            } finally {
+                BufferPool.release(buff);
+            }
+        }
+        return new DigestResult(digests);
+    }
+
+    private static MessageDigest[] getLocalInstances(String... algorithms) {
+        if (algorithms.length == 0) {
+            throw new IllegalArgumentException("至少需要一种算法");
+        }
+        LinkedHashSet<String> set = new LinkedHashSet<>();
+        Collections.addAll(set, algorithms);
+        MessageDigest[] digests = new MessageDigest[set.size()];
+        int i = 0;
+        for (String algorithm : set) {
+            digests[i++] = getLocalInstance(algorithm);
+        }
+        return digests;
+    }
+
+	/* 分块摘要 */
+
+    /**
+     * 默认的分块大小
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int CHUNK_READ_SIZE = 64 * 1024;
+
+    /**
+     * 使用默认的分块大小和并发数计算文件的分块摘要，
+     * 具体请参阅{@link #treeDigest(String, File, int, int)}
+     *
+     * @param algorithm
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static TreeDigest treeDigest(String algorithm, File file) throws IOException {
+        return treeDigest(algorithm, file, DEFAULT_CHUNK_SIZE, IOExecutor.getDefaultParallelism());
+    }
+
+    /**
+     * 将文件按照chunkSize分块，使用多个线程通过{@link FileChannel#read(ByteBuffer, long)}
+     * 按位置并发地读取并计算每块的摘要，最后合并为根摘要。
+     * 对于很大的文件，速度可以远快于{@link #digest(String, File)}。
+     *
+     * @param algorithm
+     * @param file
+     * @param chunkSize   分块的大小
+     * @param parallelism 同时计算的块数，小于等于1时在当前线程计算
+     * @return
+     * @throws IOException
+     */
+    public static TreeDigest treeDigest(String algorithm, File file, int chunkSize, int parallelism) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            int count = TreeDigest.getChunkCount(length, chunkSize);
+            byte[][] chunkDigests = new byte[count][];
+            AtomicInteger nextIndex = new AtomicInteger();
+
+            int workerCount = Math.min(parallelism, count);
+            if (workerCount <= 1) {
+                digestChunks(algorithm, channel, length, chunkSize, chunkDigests, nextIndex);
+            } else {
+                List<Callable<Void>> tasks = new ArrayList<>(workerCount);
+                for (int i = 0; i < workerCount; i++) {
+                    tasks.add(() -> {
+                        digestChunks(algorithm, channel, length, chunkSize, chunkDigests, nextIndex);
+                        return null;
+                    });
+                }
+                IOExecutor.getShared().runAll(tasks);
+            }
+            return new TreeDigest(algorithm, chunkSize, length, chunkDigests);
+        } finally {
+            IOUtil.close(raf);
+        }
+    }
+
+    /**
+     * 计算文件中单独一块的摘要，可以配合{@link TreeDigest#matchesChunk(int, byte[])}校验下载完成的块。
+     *
+     * @param algorithm
+     * @param file
+     * @param chunkSize
+     * @param index
+     * @return
+     * @throws IOException
+     */
+    public static byte[] digestChunk(String algorithm, File file, int chunkSize, int index) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long position = (long) index * chunkSize;
+            long length = channel.size();
+            if (index < 0 || position >= length) {
+                throw new IndexOutOfBoundsException("块不存在：" + index);
+            }
+            return digestChunk(algorithm, channel, position, Math.min(chunkSize, length - position));
+        } finally {
+            IOUtil.close(raf);
+        }
+    }
+
+    /**
+     * 不断领取下一块并计算摘要，直到所有的块都被领取
+     */
+    private static void digestChunks(String algorithm, FileChannel channel, long length, int chunkSize,
+                                     byte[][] chunkDigests, AtomicInteger nextIndex) throws IOException {
+        int idx;
+        long position;
+        while ((idx = nextIndex.getAndIncrement()) < chunkDigests.length) {
+            position = (long) idx * chunkSize;
+            chunkDigests[idx] = digestChunk(algorithm, channel, position, Math.min(chunkSize, length - position));
+        }
+    }
+
+    private static byte[] digestChunk(String algorithm, FileChannel channel, long position, long size) throws IOException {
+        MessageDigest digest = getLocalInstance(algorithm);
+        byte[] buff = BufferPool.acquireBytes(CHUNK_READ_SIZE);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(buff);
+            long end = position + size;
             int len;
-            while ((len = (in.read(buff))) != -1) {
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buff.length, end - position));
+                len = channel.read(buffer, position);
+                if (len < 0) {
+                    throw new EOFException("文件在读取过程中被截短");
+                }
                 digest.update(buff, 0, len);
+                position += len;
             }
-            return EncodeUtil.toHexString(digest.digest());
-        } catch (NoSuchAlgorithmException e) {
-            LogUtil.e(e);
-            throw new IllegalStateException("无法初始化" + algorithm + "算法");
         } finally {
-            IOUtil.close(in);
+            BufferPool.release(buff);
+        }
+        return digest.digest();
+    }
+
+	/* 线程缓存 */
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * 超过该长度的字符串不再编码到线程缓存的数组中，以免长期持有过大的数组
+     */
+    private static final int MAX_LOCAL_CHARS = 4096;
+
+    private static final ThreadLocal<LocalCache> LOCAL_CACHE = new ThreadLocal<LocalCache>() {
+        @Override
+        protected LocalCache initialValue() {
+            return new LocalCache();
+        }
+    };
+
+    /**
+     * 每个线程各自缓存的摘要实例和缓冲区，计算摘要时除了结果的字符串之外不再创建对象
+     */
+    private static final class LocalCache {
+
+        private final Map<String, MessageDigest> digests = new HashMap<>(4);
+        private byte[] bytes = new byte[256];
+        private byte[] digestBytes = new byte[64];
+        private char[] hexChars = new char[128];
+
+        /**
+         * 将str按照UTF-8编码到{@link #bytes}中，不成对的代理字符编码为“?”，与{@link String#getBytes(Charset)}一致。
+         *
+         * @return 编码后的字节数
+         */
+        int encodeUTF8(String str) {
+            int charCount = str.length();
+            if (bytes.length < charCount * 3) {
+                bytes = new byte[charCount * 3];
+            }
+
+            byte[] bytes = this.bytes;
+            int len = 0;
+            char ch, low;
+            int codePoint;
+            for (int i = 0; i < charCount; i++) {
+                ch = str.charAt(i);
+                if (ch < 0x80) {
+                    bytes[len++] = (byte) ch;
+                } else if (ch < 0x800) {
+                    bytes[len++] = (byte) (0xC0 | (ch >> 6));
+                    bytes[len++] = (byte) (0x80 | (ch & 0x3F));
+                } else if (ch < Character.MIN_SURROGATE || ch > Character.MAX_SURROGATE) {
+                    bytes[len++] = (byte) (0xE0 | (ch >> 12));
+                    bytes[len++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+                    bytes[len++] = (byte) (0x80 | (ch & 0x3F));
+                } else if (Character.isHighSurrogate(ch) && i + 1 < charCount
+                        && Character.isLowSurrogate(low = str.charAt(i + 1))) {
+                    codePoint = Character.toCodePoint(ch, low);
+                    bytes[len++] = (byte) (0xF0 | (codePoint >> 18));
+                    bytes[len++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    bytes[len++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    bytes[len++] = (byte) (0x80 | (codePoint & 0x3F));
+                    i++;
+                } else {
+                    bytes[len++] = '?';
+                }
+            }
+            return len;
+        }
+
+        /**
+         * 完成摘要并转为小写的十六进制字符串
+         */
+        String toHexString(MessageDigest digest) {
+            int len = digest.getDigestLength();
+            byte[] result;
+            if (len > 0) {
+                if (digestBytes.length < len) {
+                    digestBytes = new byte[len];
+                }
+                try {
+                    len = digest.digest(digestBytes, 0, len);
+                } catch (DigestException e) {
+                    throw new IllegalStateException(e);
+                }
+                result = digestBytes;
+            } else {// 无法预先得知摘要的长度
+                result = digest.digest();
+                len = result.length;
+            }
+
+            if (hexChars.length < len * 2) {
+                hexChars = new char[len * 2];
+            }
+            return new String(hexChars, 0, EncodeUtil.encodeHex(result, 0, len, hexChars, 0, false));
         }
     }
 
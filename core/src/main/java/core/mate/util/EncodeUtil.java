@@ -1,5 +1,7 @@
 package core.mate.util;
 
+import java.util.Arrays;
+
 /**
  * 用于编码的工具集
  *
@@ -12,6 +14,21 @@ public final class EncodeUtil {
 
 	/*十六进制转化*/
 
+	private static final char[] LOWER_DIGITS = "0123456789abcdef".toCharArray();
+	private static final char[] UPPER_DIGITS = "0123456789ABCDEF".toCharArray();
+	/**
+	 * 十六进制字符到数值的映射表，非十六进制字符为-1
+	 */
+	private static final byte[] HEX_VALUES = new byte[128];
+
+	static {
+		Arrays.fill(HEX_VALUES, (byte) -1);
+		for (int i = 0; i < 16; i++) {
+			HEX_VALUES[LOWER_DIGITS[i]] = (byte) i;
+			HEX_VALUES[UPPER_DIGITS[i]] = (byte) i;
+		}
+	}
+
 	/**
 	 * 具体实现请参阅{@link #toHexString(boolean, byte...)}。默认使用小写。
 	 *
@@ -34,25 +51,143 @@ public final class EncodeUtil {
 			return "";
 		}
 
-		int len = bytes.length;
-		StringBuilder builder = new StringBuilder(len * 2);
+		char[] chars = new char[bytes.length * 2];
+		encodeHex(bytes, 0, bytes.length, chars, 0, upperCase);
+		return new String(chars);
+	}
+
+	/**
+	 * 批量将字节数组转为十六进制的字符串，所有的数组共用同一个字符缓冲区。
+	 * 适用于一次性转化大量的摘要。
+	 *
+	 * @param upperCase 是否需要大写
+	 * @param arrays
+	 * @return 与arrays一一对应的字符串
+	 */
+	public static String[] toHexStrings (boolean upperCase, byte[]... arrays) {
+		int maxLen = 0;
+		for (byte[] bytes : arrays) {
+			maxLen = Math.max(maxLen, bytes.length);
+		}
+
+		String[] result = new String[arrays.length];
+		char[] chars = new char[maxLen * 2];
+		byte[] bytes;
+		for (int i = 0, count = arrays.length; i < count; i++) {
+			bytes = arrays[i];
+			result[i] = new String(chars, 0, encodeHex(bytes, 0, bytes.length, chars, 0, upperCase));
+		}
+		return result;
+	}
+
+	/**
+	 * 将十六进制追加到builder中，不会创建中间的字符串
+	 *
+	 * @param builder
+	 * @param upperCase 是否需要大写
+	 * @param bytes
+	 * @param offset
+	 * @param len
+	 * @return builder
+	 */
+	public static StringBuilder appendHex (StringBuilder builder, boolean upperCase, byte[] bytes, int offset, int len) {
+		char[] digits = upperCase ? UPPER_DIGITS : LOWER_DIGITS;
+		builder.ensureCapacity(builder.length() + len * 2);
+		int b;
+		for (int i = offset, end = offset + len; i < end; i++) {
+			b = bytes[i] & 0xFF;
+			builder.append(digits[b >>> 4]).append(digits[b & 0x0F]);
+		}
+		return builder;
+	}
+
+	/**
+	 * 将src中的字节转为十六进制写入到dst中，dst需要至少有len * 2的剩余空间。
+	 *
+	 * @param src
+	 * @param srcOffset
+	 * @param len       需要转化的字节数
+	 * @param dst
+	 * @param dstOffset
+	 * @param upperCase 是否需要大写
+	 * @return 写入的字符数，即len * 2
+	 */
+	public static int encodeHex (byte[] src, int srcOffset, int len, char[] dst, int dstOffset, boolean upperCase) {
+		if (dst.length - dstOffset < len * 2) {
+			throw new IndexOutOfBoundsException("dst的空间不足");
+		}
+
+		char[] digits = upperCase ? UPPER_DIGITS : LOWER_DIGITS;
+		int b;
+		for (int i = srcOffset, end = srcOffset + len; i < end; i++) {
+			b = src[i] & 0xFF;
+			dst[dstOffset++] = digits[b >>> 4];
+			dst[dstOffset++] = digits[b & 0x0F];
+		}
+		return len * 2;
+	}
+
+	/**
+	 * 将十六进制的字符解码写入到dst中，无视大小写。dst需要至少有len / 2的剩余空间。
+	 * 校验时不会抛出异常，遇到不合法的字符只会返回-1，此时dst中可能已经写入了部分数据。
+	 *
+	 * @param hex
+	 * @param offset
+	 * @param len       需要解码的字符数，必须是偶数
+	 * @param dst
+	 * @param dstOffset
+	 * @return 写入的字节数，len为奇数或者含有非十六进制字符时返回-1
+	 */
+	public static int decodeHex (CharSequence hex, int offset, int len, byte[] dst, int dstOffset) {
+		if ((len & 1) != 0) {
+			return -1;
+		}
+		if (dst.length - dstOffset < len / 2) {
+			throw new IndexOutOfBoundsException("dst的空间不足");
+		}
+
+		byte[] values = HEX_VALUES;
+		char high, low;
+		int h, l;
+		int invalid = 0;
+		for (int i = offset, end = offset + len; i < end; i += 2) {
+			high = hex.charAt(i);
+			low = hex.charAt(i + 1);
+			h = values[high & 0x7F];
+			l = values[low & 0x7F];
+			// 只记录是否出现过非ASCII字符或者-1，在循环结束后统一判断
+			invalid |= ((high | low) >>> 7) | ((h | l) >>> 4);
+			dst[dstOffset++] = (byte) ((h << 4) | l);
+		}
+		return invalid == 0 ? len / 2 : -1;
+	}
+
+	/**
+	 * @param hex
+	 * @return hex是否是长度为偶数的十六进制字符串，空字符串返回false
+	 */
+	public static boolean isHex (CharSequence hex) {
+		int len = hex.length();
+		if (len == 0 || (len & 1) != 0) {
+			return false;
+		}
 
-		String tmp;
-		for (byte b : bytes) {
-			tmp = upperCase ? Integer.toHexString(0xFF & b).toUpperCase() : Integer.toHexString(0xFF & b);
-			if (tmp.length() == 1) {
-				builder.append("0").append(tmp);
-			} else
-				builder.append(tmp);
+		int invalid = 0;
+		char ch;
+		for (int i = 0; i < len; i++) {
+			ch = hex.charAt(i);
+			invalid |= (ch >>> 7) | (HEX_VALUES[ch & 0x7F] >>> 4);
 		}
-		return builder.toString();
+		return invalid == 0;
 	}
 
 	/**
 	 * 将十六进制的字符串转化为字节数据。如将“0f”转化为0000 1111。无视大小写。
+	 * 长度为奇数时忽略最后一个字符。
 	 *
 	 * @param hexStr
 	 * @return
+	 * @throws NumberFormatException 含有非十六进制字符时抛出
 	 */
 	public static byte[] toBytes (String hexStr) {
 		int len = hexStr.length();
@@ -61,10 +196,8 @@ public final class EncodeUtil {
 		}
 
 		byte[] result = new byte[len / 2];
-		for (int i = 0; i < len / 2; i++) {
-			int high = Integer.parseInt(hexStr.substring(i * 2, i * 2 + 1), 16);
-			int low = Integer.parseInt(hexStr.substring(i * 2 + 1, i * 2 + 2), 16);
-			result[i] = (byte) (high * 16 + low);
+		if (decodeHex(hexStr, 0, result.length * 2, result, 0) == -1) {
+			throw new NumberFormatException("不是合法的十六进制字符串：" + hexStr);
 		}
 		return result;
 	}
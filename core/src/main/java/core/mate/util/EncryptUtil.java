@@ -1,14 +1,29 @@
 package core.mate.util;
 
+import android.support.annotation.Nullable;
 import android.support.annotation.StringDef;
 
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -16,8 +31,12 @@ import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.KeyGenerator;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
+import core.mate.async.IOExecutor;
+import core.mate.content.AESEngine;
+
 /**
  * 用于加密和解密的工具类
  *
@@ -38,10 +57,21 @@ public class EncryptUtil {
     public static final String AES_MODE_ECB = "ECB";
     public static final String AES_MODE_OFB = "OFB";
     public static final String AES_MODE_PCBC = "PCBC";
+    /**
+     * 计数器模式，需要配合{@link #AES_PADDING_NO}使用。密文与明文等长，可以从任意位置开始加解密，
+     * 用于{@link #encryptAESChunked(File, File, byte[], int, int)}。
+     */
+    public static final String AES_MODE_CTR = "CTR";
+    /**
+     * 带校验的GCM模式，需要配合{@link #AES_PADDING_NO}和{@link javax.crypto.spec.GCMParameterSpec}使用，
+     * 后者在API 19之后才可用。用于{@link core.mate.content.EncryptedBlobStore}。
+     */
+    public static final String AES_MODE_GCM = "GCM";
 
     public static final String AES_PADDING_ZERO = "ZeroBytePadding";
     public static final String AES_PADDING_PKCS5 = "PKCS5Padding";
     public static final String AES_PADDING_ISO10126 = "ISO10126Padding";
+    public static final String AES_PADDING_NO = "NoPadding";
 
     public static final String AES_DEFAULT_SECURE_ALGORITHM = "SHA1PRNG";
     public static final String AES_DEFAULT_SECURE_PROVIDER = "Crypto";
@@ -51,7 +81,9 @@ public class EncryptUtil {
             AES_MODE_CFB,
             AES_MODE_ECB,
             AES_MODE_OFB,
-            AES_MODE_PCBC
+            AES_MODE_PCBC,
+            AES_MODE_CTR,
+            AES_MODE_GCM
     })
     @Retention(RetentionPolicy.SOURCE)
     public @interface AESMode {
@@ -60,12 +92,36 @@ public class EncryptUtil {
     @StringDef({
             AES_PADDING_ZERO,
             AES_PADDING_PKCS5,
-            AES_PADDING_ISO10126
+            AES_PADDING_ISO10126,
+            AES_PADDING_NO
     })
     @Retention(RetentionPolicy.SOURCE)
     public @interface AESPadding {
     }
 
+	/* AES密钥 */
+
+    /**
+     * 从密码派生AES密钥。同样的密码总是得到同样的密钥。
+     * 派生的开销较大，需要反复使用同一个密码时请使用{@link AESEngine#getKey(byte[])}获取缓存的密钥。
+     *
+     * @param psd
+     * @return
+     * @throws NoSuchProviderException
+     * @throws NoSuchAlgorithmException
+     */
+    public static SecretKeySpec deriveAESKey(byte[] psd) throws NoSuchProviderException, NoSuchAlgorithmException {
+        //SecureRandom sr = new SecureRandom();// java pc版加密设置
+        SecureRandom secureRandom = SecureRandom.getInstance(AES_DEFAULT_SECURE_ALGORITHM, AES_DEFAULT_SECURE_PROVIDER);// android版加密设置
+        secureRandom.setSeed(psd);
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance(AES);
+        keyGenerator.init(256, secureRandom); // 192 and 256 bits may not be available
+        SecretKey secretKey = keyGenerator.generateKey();
+        byte[] encodedKey = secretKey.getEncoded();
+        return new SecretKeySpec(encodedKey, AES);
+    }
+
 	/* AES加密 */
 
     /**
@@ -96,7 +152,7 @@ public class EncryptUtil {
     }
 
     /**
-     * AES加密
+     * AES加密。密钥和{@link Cipher}由{@link AESEngine#getDefault()}缓存。
      *
      * @param content
      * @param psd
@@ -111,22 +167,7 @@ public class EncryptUtil {
      * @throws IllegalBlockSizeException
      */
     public static byte[] encryptAES(@AESMode String mode, @AESPadding String padding, byte[] content, byte[] psd) throws Exception {
-        String cipherName = AES + '/' + mode + '/' + padding;
-
-        //SecureRandom sr = new SecureRandom();// java pc版加密设置
-        SecureRandom secureRandom = SecureRandom.getInstance(AES_DEFAULT_SECURE_ALGORITHM, AES_DEFAULT_SECURE_PROVIDER);// android版加密设置
-        secureRandom.setSeed(psd);
-
-        KeyGenerator keyGenerator = KeyGenerator.getInstance(AES);
-        keyGenerator.init(256, secureRandom); // 192 and 256 bits may not be available
-        SecretKey secretKey = keyGenerator.generateKey();
-        byte[] encodedKey = secretKey.getEncoded();
-        SecretKeySpec key = new SecretKeySpec(encodedKey, AES);
-
-        //Cipher cipher = Cipher.getInstance(AES);// java pc版加密设置
-        Cipher cipher = Cipher.getInstance(cipherName);// Android版加密设置
-        cipher.init(Cipher.ENCRYPT_MODE, key);// 初始化
-        return cipher.doFinal(content);
+        return AESEngine.getDefault().encrypt(mode, padding, content, psd);
     }
 
 	/* AES解密*/
@@ -160,6 +201,7 @@ public class EncryptUtil {
 
     /**
      * AES解密。默认用于初始化{@link KeyGenerator}的长度为256。
+     * 密钥和{@link Cipher}由{@link AESEngine#getDefault()}缓存。
      *
      * @param mode
      * @param padding
@@ -174,22 +216,458 @@ public class EncryptUtil {
      * @throws IllegalBlockSizeException
      */
     public static byte[] decryptAES(@AESMode String mode, @AESPadding String padding, byte[] cipherBytes, byte[] psd) throws Exception {
-        String cipherName = AES + '/' + mode + '/' + padding;
+        return AESEngine.getDefault().decrypt(mode, padding, cipherBytes, psd);
+    }
 
-        //SecureRandom sr = new SecureRandom();// java pc版解密设置
-        SecureRandom secureRandom = SecureRandom.getInstance(AES_DEFAULT_SECURE_ALGORITHM, AES_DEFAULT_SECURE_PROVIDER);//Android
-        secureRandom.setSeed(psd);
+	/* AES流 */
 
-        KeyGenerator keyGenerator = KeyGenerator.getInstance(AES);
-        keyGenerator.init(256, secureRandom);
-        SecretKey secretKey = keyGenerator.generateKey();
-        byte[] encodedKey = secretKey.getEncoded();
-        SecretKeySpec key = new SecretKeySpec(encodedKey, AES);
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 流式加密，数据不会一次性读入内存。结束后会关闭in和out。
+     * 除了{@link #AES_MODE_ECB}之外的模式都需要IV，此时会随机生成16字节的IV并写在密文的开头，
+     * 解密时再从开头读出。{@link #AES_MODE_GCM}请使用{@link core.mate.content.EncryptedBlobStore}。
+     *
+     * @param mode
+     * @param padding
+     * @param in      明文
+     * @param out     密文
+     * @param psd
+     * @return 写入的密文字节数，包括开头的IV
+     * @throws IOException
+     * @throws GeneralSecurityException
+     * @throws IllegalArgumentException 模式为{@link #AES_MODE_GCM}时抛出
+     */
+    public static long encryptAES(@AESMode String mode, @AESPadding String padding, InputStream in, OutputStream out, byte[] psd) throws IOException, GeneralSecurityException {
+        return cryptAES(Cipher.ENCRYPT_MODE, mode, padding, in, out, psd);
+    }
+
+    /**
+     * 流式解密由{@link #encryptAES(String, String, InputStream, OutputStream, byte[])}加密的数据，
+     * 数据不会一次性读入内存。结束后会关闭in和out。
+     *
+     * @param mode
+     * @param padding
+     * @param in      密文
+     * @param out     明文
+     * @param psd
+     * @return 写入的明文字节数
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static long decryptAES(@AESMode String mode, @AESPadding String padding, InputStream in, OutputStream out, byte[] psd) throws IOException, GeneralSecurityException {
+        return cryptAES(Cipher.DECRYPT_MODE, mode, padding, in, out, psd);
+    }
 
-        //Cipher cipher = Cipher.getInstance(AES);// java pc版设置
-        Cipher cipher = Cipher.getInstance(cipherName);// Android版设置
-        cipher.init(Cipher.DECRYPT_MODE, key);// 初始化
-        return cipher.doFinal(cipherBytes);
+    /**
+     * 从in的当前位置开始加密剩余的数据，写入到out的当前位置。该方法不会关闭通道。
+     * IV的处理与{@link #encryptAES(String, String, InputStream, OutputStream, byte[])}一致。
+     *
+     * @param mode
+     * @param padding
+     * @param in      明文
+     * @param out     密文
+     * @param psd
+     * @return 写入的密文字节数，包括开头的IV
+     * @throws IOException
+     * @throws GeneralSecurityException
+     * @throws IllegalArgumentException 模式为{@link #AES_MODE_GCM}时抛出
+     */
+    public static long encryptAES(@AESMode String mode, @AESPadding String padding, FileChannel in, FileChannel out, byte[] psd) throws IOException, GeneralSecurityException {
+        return cryptAES(Cipher.ENCRYPT_MODE, mode, padding, in, out, psd);
+    }
+
+    /**
+     * 从in的当前位置开始解密剩余的数据，写入到out的当前位置。该方法不会关闭通道。
+     *
+     * @param mode
+     * @param padding
+     * @param in      密文
+     * @param out     明文
+     * @param psd
+     * @return 写入的明文字节数
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static long decryptAES(@AESMode String mode, @AESPadding String padding, FileChannel in, FileChannel out, byte[] psd) throws IOException, GeneralSecurityException {
+        return cryptAES(Cipher.DECRYPT_MODE, mode, padding, in, out, psd);
     }
 
+    /**
+     * @return 流式加解密时mode是否需要在密文开头保存IV
+     */
+    private static boolean needsStreamIV(String mode) {
+        if (AES_MODE_GCM.equals(mode)) {
+            throw new IllegalArgumentException("流式加解密不支持GCM模式");
+        }
+        return !AES_MODE_ECB.equals(mode);
+    }
+
+    private static Cipher initLocalCipher(int opmode, String mode, String padding, byte[] psd, @Nullable byte[] iv) throws GeneralSecurityException {
+        SecretKeySpec key = AESEngine.getDefault().getKey(psd);
+        Cipher cipher = AESEngine.getLocalCipher(mode, padding);
+        if (iv != null) {
+            cipher.init(opmode, key, new IvParameterSpec(iv));
+        } else {
+            cipher.init(opmode, key);
+        }
+        return cipher;
+    }
+
+    private static long cryptAES(int opmode, String mode, String padding, InputStream in, OutputStream out, byte[] psd) throws IOException, GeneralSecurityException {
+        byte[] inBuff = BufferPool.acquireBytes(STREAM_BUFFER_SIZE);
+        byte[] outBuff = null;
+        try {
+            long total = 0;
+            byte[] iv = null;
+            if (needsStreamIV(mode)) {
+                iv = new byte[AES_BLOCK_SIZE];
+                if (opmode == Cipher.ENCRYPT_MODE) {
+                    new SecureRandom().nextBytes(iv);
+                    out.write(iv);
+                    total += iv.length;
+                } else {
+                    new DataInputStream(in).readFully(iv);
+                }
+            }
+            Cipher cipher = initLocalCipher(opmode, mode, padding, psd, iv);
+            // 输出最多比输入多出一个分组
+            outBuff = BufferPool.acquireBytes(inBuff.length + cipher.getBlockSize() * 2);
+            int len;
+            while ((len = in.read(inBuff)) != -1) {
+                len = cipher.update(inBuff, 0, len, outBuff, 0);
+                out.write(outBuff, 0, len);
+                total += len;
+            }
+            len = cipher.doFinal(outBuff, 0);
+            out.write(outBuff, 0, len);
+            out.flush();
+            return total + len;
+        } finally {
+            BufferPool.release(inBuff);
+            if (outBuff != null) {
+                BufferPool.release(outBuff);
+            }
+            IOUtil.close(in);
+            IOUtil.close(out);
+        }
+    }
+
+    private static long cryptAES(int opmode, String mode, String padding, FileChannel in, FileChannel out, byte[] psd) throws IOException, GeneralSecurityException {
+        long total = 0;
+        byte[] iv = null;
+        if (needsStreamIV(mode)) {
+            iv = new byte[AES_BLOCK_SIZE];
+            ByteBuffer ivBuffer = ByteBuffer.wrap(iv);
+            if (opmode == Cipher.ENCRYPT_MODE) {
+                new SecureRandom().nextBytes(iv);
+                ivBuffer.position(iv.length);
+                total += writeFully(out, ivBuffer);
+            } else {
+                while (ivBuffer.hasRemaining()) {
+                    if (in.read(ivBuffer) < 0) {
+                        throw new EOFException("密文缺少IV");
+                    }
+                }
+            }
+        }
+        Cipher cipher = initLocalCipher(opmode, mode, padding, psd, iv);
+        ByteBuffer inBuffer = ByteBuffer.allocateDirect(STREAM_BUFFER_SIZE);
+        ByteBuffer outBuffer = ByteBuffer.allocateDirect(STREAM_BUFFER_SIZE + cipher.getBlockSize() * 2);
+        while (in.read(inBuffer) != -1) {
+            inBuffer.flip();
+            outBuffer.clear();
+            cipher.update(inBuffer, outBuffer);
+            total += writeFully(out, outBuffer);
+            inBuffer.clear();
+        }
+        inBuffer.flip();
+        outBuffer.clear();
+        cipher.doFinal(inBuffer, outBuffer);
+        return total + writeFully(out, outBuffer);
+    }
+
+    private static int writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        int len = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        return len;
+    }
+
+	/* 分块AES */
+
+    /**
+     * 分块加密的文件头部存放的初始计数器的长度
+     */
+    public static final int AES_CHUNKED_HEADER_SIZE = 16;
+    /**
+     * 默认的分块大小
+     */
+    public static final int AES_DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    private static final int AES_BLOCK_SIZE = 16;
+
+    /**
+     * 使用默认的分块大小和并发数加密文件，
+     * 具体请参阅{@link #encryptAESChunked(File, File, byte[], int, int)}
+     */
+    public static void encryptAESChunked(File src, File dst, byte[] psd) throws IOException, GeneralSecurityException {
+        encryptAESChunked(src, dst, psd, AES_DEFAULT_CHUNK_SIZE, IOExecutor.getDefaultParallelism());
+    }
+
+    /**
+     * 使用{@link #AES_MODE_CTR}模式加密文件。文件的开头是随机生成的{@link #AES_CHUNKED_HEADER_SIZE}字节的初始计数器，
+     * 之后是与明文等长的密文。每块的计数器可以直接由位置算出，因而文件被分块后由多个线程按位置并发地读写，
+     * 解密时也可以通过{@link #readAESChunked(File, byte[], long, byte[], int, int)}只读取其中的一段。
+     * <p>
+     * <b>注意，CTR模式并不校验数据的完整性，密文被篡改时只会得到错误的明文，需要时请另行校验摘要。</b>
+     *
+     * @param src
+     * @param dst         已经存在时会被覆盖，失败时会被删除
+     * @param psd
+     * @param chunkSize   分块的大小，必须是16的倍数，不影响加密的结果
+     * @param parallelism 同时处理的块数，小于等于1时在当前线程处理
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static void encryptAESChunked(File src, File dst, byte[] psd, int chunkSize, int parallelism) throws IOException, GeneralSecurityException {
+        byte[] iv = new byte[AES_CHUNKED_HEADER_SIZE];
+        new SecureRandom().nextBytes(iv);
+        cryptAESChunked(src, 0, dst, iv, psd, chunkSize, parallelism);
+    }
+
+    /**
+     * 使用默认的分块大小和并发数解密文件，
+     * 具体请参阅{@link #decryptAESChunked(File, File, byte[], int, int)}
+     */
+    public static void decryptAESChunked(File src, File dst, byte[] psd) throws IOException, GeneralSecurityException {
+        decryptAESChunked(src, dst, psd, AES_DEFAULT_CHUNK_SIZE, IOExecutor.getDefaultParallelism());
+    }
+
+    /**
+     * 解密由{@link #encryptAESChunked(File, File, byte[], int, int)}加密的文件
+     *
+     * @param src
+     * @param dst         已经存在时会被覆盖，失败时会被删除
+     * @param psd
+     * @param chunkSize   分块的大小，必须是16的倍数，不需要与加密时一致
+     * @param parallelism 同时处理的块数，小于等于1时在当前线程处理
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static void decryptAESChunked(File src, File dst, byte[] psd, int chunkSize, int parallelism) throws IOException, GeneralSecurityException {
+        cryptAESChunked(src, AES_CHUNKED_HEADER_SIZE, dst, readChunkedIV(src), psd, chunkSize, parallelism);
+    }
+
+    /**
+     * 随机读取由{@link #encryptAESChunked(File, File, byte[], int, int)}加密的文件中的一段明文
+     *
+     * @param src
+     * @param psd
+     * @param position 明文中的位置
+     * @param dst
+     * @param offset
+     * @param len
+     * @return 读取的字节数，position超出明文的长度时返回-1
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static int readAESChunked(File src, byte[] psd, long position, byte[] dst, int offset, int len) throws IOException, GeneralSecurityException {
+        RandomAccessFile raf = new RandomAccessFile(src, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            byte[] iv = readChunkedIV(channel);
+            long plainLength = channel.size() - AES_CHUNKED_HEADER_SIZE;
+            if (position >= plainLength) {
+                return -1;
+            }
+
+            len = (int) Math.min(len, plainLength - position);
+            ByteBuffer buffer = ByteBuffer.wrap(dst, offset, len);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, AES_CHUNKED_HEADER_SIZE + position + buffer.position() - offset) < 0) {
+                    throw new EOFException("文件在读取过程中被截短");
+                }
+            }
+            Cipher cipher = initCTRCipher(AESEngine.getDefault().getKey(psd), iv, position);
+            cipher.update(dst, offset, len, dst, offset);
+            return len;
+        } finally {
+            IOUtil.close(raf);
+        }
+    }
+
+    private static byte[] readChunkedIV(File src) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(src, "r");
+        try {
+            return readChunkedIV(raf.getChannel());
+        } finally {
+            IOUtil.close(raf);
+        }
+    }
+
+    private static byte[] readChunkedIV(FileChannel channel) throws IOException {
+        byte[] iv = new byte[AES_CHUNKED_HEADER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(iv);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                throw new EOFException("不是分块加密的文件");
+            }
+        }
+        return iv;
+    }
+
+    /**
+     * 加密时从src的开头读取明文，在dst的开头写入iv；解密时从src的头部之后读取密文。
+     * CTR模式下加密和解密是同样的运算。
+     */
+    private static void cryptAESChunked(File src, long srcOffset, File dst, byte[] iv, byte[] psd, int chunkSize, int parallelism) throws IOException, GeneralSecurityException {
+        if (chunkSize <= 0 || chunkSize % AES_BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("chunkSize必须是16的倍数");
+        }
+
+        SecretKeySpec key = AESEngine.getDefault().getKey(psd);
+        RandomAccessFile srcRaf = new RandomAccessFile(src, "r");
+        RandomAccessFile dstRaf = null;
+        boolean succeed = false;
+        try {
+            dstRaf = new RandomAccessFile(dst, "rw");
+            FileChannel in = srcRaf.getChannel();
+            FileChannel out = dstRaf.getChannel();
+            long length = in.size() - srcOffset;
+            long dstOffset = srcOffset == 0 ? AES_CHUNKED_HEADER_SIZE : 0;
+            dstRaf.setLength(dstOffset + length);
+            if (dstOffset > 0) {
+                ByteBuffer header = ByteBuffer.wrap(iv);
+                while (header.hasRemaining()) {
+                    out.write(header, header.position());
+                }
+            }
+
+            long count = (length + chunkSize - 1) / chunkSize;
+            if (count > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("分块过多");
+            }
+            ChunkCrypter crypter = new ChunkCrypter(key, iv, in, srcOffset, out, dstOffset, length, chunkSize, (int) count);
+            int workerCount = (int) Math.min(parallelism, count);
+            if (workerCount <= 1) {
+                crypter.call();
+            } else {
+                List<Callable<Void>> tasks = new ArrayList<>(workerCount);
+                for (int i = 0; i < workerCount; i++) {
+                    tasks.add(crypter);
+                }
+                IOExecutor.getShared().runAll(tasks);
+            }
+            out.force(false);
+            succeed = true;
+        } catch (IOException e) {
+            // 工作线程中的加密异常会被包装为IOException
+            if (e.getCause() instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) e.getCause();
+            }
+            throw e;
+        } finally {
+            IOUtil.close(srcRaf);
+            IOUtil.close(dstRaf);
+            if (!succeed) {
+                dst.delete();
+            }
+        }
+    }
+
+    /**
+     * 初始化一个从明文的position处开始的CTR模式的{@link Cipher}
+     */
+    private static Cipher initCTRCipher(SecretKeySpec key, byte[] iv, long position) throws GeneralSecurityException {
+        // 计数器是128位的大端整数，每个分组加一
+        byte[] counter = iv.clone();
+        long blocks = position / AES_BLOCK_SIZE;
+        int carry = 0;
+        for (int i = counter.length - 1; i >= 0; i--) {
+            int sum = (counter[i] & 0xFF) + (int) (blocks & 0xFF) + carry;
+            counter[i] = (byte) sum;
+            carry = sum >>> 8;
+            blocks >>>= 8;
+        }
+
+        Cipher cipher = AESEngine.getLocalCipher(AES_MODE_CTR, AES_PADDING_NO);
+        cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(counter));
+        int skip = (int) (position % AES_BLOCK_SIZE);
+        if (skip > 0) {// 丢弃分组中position之前的密钥流
+            cipher.update(new byte[skip]);
+        }
+        return cipher;
+    }
+
+    /**
+     * 不断领取下一块并加解密，直到所有的块都被领取。所有的工作线程共用同一个实例。
+     */
+    private static final class ChunkCrypter implements Callable<Void> {
+
+        private final SecretKeySpec key;
+        private final byte[] iv;
+        private final FileChannel in;
+        private final long inOffset;
+        private final FileChannel out;
+        private final long outOffset;
+        private final long length;
+        private final int chunkSize;
+        private final int chunkCount;
+        private final AtomicInteger nextIndex = new AtomicInteger();
+
+        ChunkCrypter(SecretKeySpec key, byte[] iv, FileChannel in, long inOffset, FileChannel out, long outOffset,
+                     long length, int chunkSize, int chunkCount) {
+            this.key = key;
+            this.iv = iv;
+            this.in = in;
+            this.inOffset = inOffset;
+            this.out = out;
+            this.outOffset = outOffset;
+            this.length = length;
+            this.chunkSize = chunkSize;
+            this.chunkCount = chunkCount;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            byte[] buff = BufferPool.acquireBytes(STREAM_BUFFER_SIZE);
+            try {
+                int idx;
+                while ((idx = nextIndex.getAndIncrement()) < chunkCount) {
+                    long position = (long) idx * chunkSize;
+                    cryptChunk(buff, position, Math.min(chunkSize, length - position));
+                }
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            } finally {
+                BufferPool.release(buff);
+            }
+            return null;
+        }
+
+        private void cryptChunk(byte[] buff, long position, long size) throws IOException, GeneralSecurityException {
+            Cipher cipher = initCTRCipher(key, iv, position);
+            ByteBuffer buffer = ByteBuffer.wrap(buff);
+            long end = position + size;
+            int len;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buff.length, end - position));
+                while (buffer.hasRemaining()) {
+                    if (in.read(buffer, inOffset + position + buffer.position()) < 0) {
+                        throw new EOFException("文件在读取过程中被截短");
+                    }
+                }
+                len = buffer.position();
+                cipher.update(buff, 0, len, buff, 0);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer, outOffset + position + buffer.position());
+                }
+                position += len;
+            }
+        }
+    }
 }
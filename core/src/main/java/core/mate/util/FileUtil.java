@@ -12,6 +12,8 @@ import android.support.annotation.Nullable;
 import android.text.format.Formatter;
 
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
@@ -19,18 +21,36 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 
 import core.mate.Core;
+import core.mate.async.IOExecutor;
+import core.mate.content.DeleteResult;
+import core.mate.content.DigestResult;
+import core.mate.content.DigestedFile;
+import core.mate.content.DirSizeCache;
 import core.mate.content.FileExistsException;
+import core.mate.content.FileMover;
+import core.mate.content.FileWalker;
+import core.mate.content.SyncReport;
 
 /**
  * 文件系统工具集。
@@ -468,7 +488,7 @@ public final class FileUtil {
     }
 
     /**
-     * 广度优先递归遍历目录下的所有文件。默认忽略隐藏的目录。
+     * 深度优先递归遍历目录下的所有文件。默认忽略隐藏的目录。
      *
      * @param item
      * @return
@@ -478,7 +498,7 @@ public final class FileUtil {
     }
 
     /**
-     * 广度优先递归遍历目录下的所有文件。默认忽略隐藏的目录。
+     * 深度优先递归遍历目录下的所有文件。默认忽略隐藏的目录。
      *
      * @param item   如果item本身是文件并且符合filter的要求，也会被添加到list中
      * @param filter
@@ -490,7 +510,9 @@ public final class FileUtil {
     }
 
     /**
-     * 广度优先递归遍历目录下的所有文件，并填入指定的List之中。
+     * 深度优先递归遍历目录下的所有文件，并填入指定的List之中。
+     * 如果目录下的文件非常多，请考虑使用{@link #walk(File, FileFilter, FileWalker.Visitor)}
+     * 或者直接迭代{@link FileWalker}来避免一次性持有所有的文件。
      *
      * @param item           如果item本身是文件并且符合filter的要求，也会被添加到list中
      * @param result         用于保存找到文件的列表，可以为null
@@ -504,20 +526,25 @@ public final class FileUtil {
             result = new ArrayList<>();
         }
 
-        if (item.isFile()) {
-            if (filter == null || filter.accept(item)) {
-                result.add(item);
-            }
-        } else if (item.isDirectory() && (!item.isHidden() || allowHiddenDir)) {// 是目录，不是隐藏目录，或者允许隐藏目录
-            File[] files = item.listFiles();
-            for (int i = 0, len = DataUtil.getSize(files); i < len; i++) {
-                dumpFile(files[i], result, filter, allowHiddenDir);
-            }
+        for (File file : new FileWalker(item).setFilter(filter).setAllowHiddenDir(allowHiddenDir)) {
+            result.add(file);
         }
-
         return result;
     }
 
+    /**
+     * 使用{@link FileWalker}深度优先遍历目录下的文件，默认忽略隐藏的目录。
+     * 每找到一个符合filter的文件就会立刻回调visitor，可以在回调中跳过子目录或者终止遍历。
+     *
+     * @param item
+     * @param filter
+     * @param visitor
+     * @return 遍历被visitor终止时返回false
+     */
+    public static boolean walk(File item, @Nullable FileFilter filter, FileWalker.Visitor visitor) {
+        return new FileWalker(item).setFilter(filter).walk(visitor);
+    }
+
 	/* 项目大小 */
 
     /**
@@ -544,6 +571,94 @@ public final class FileUtil {
         }
     }
 
+    /**
+     * 获取文件或者目录下所有项目的大小。
+     * 目录树按层统计，同一层的每个目录作为一个任务由{@link IOExecutor}并发地统计。
+     *
+     * @param item
+     * @param parallelism 并发数，小于等于1时等同于{@link #getSize(File)}
+     * @return 文件的byte大小，如果文件不存在则返回0
+     */
+    public static long getSize(File item, int parallelism) {
+        return getSize(item, null, parallelism);
+    }
+
+    /**
+     * 获取文件或者目录下所有项目的大小。
+     * 当cache不为null时，修改时间没有变化的目录会直接使用缓存的目录结构，具体规则请参阅{@link DirSizeCache}。
+     * 文件的大小总是重新获取的，因而改写已有的文件同样会反映在结果之中。
+     *
+     * @param item
+     * @param cache       可以为null
+     * @param parallelism 并发数，小于等于1时在当前线程统计
+     * @return 文件的byte大小，如果文件不存在则返回0
+     */
+    public static long getSize(File item, @Nullable DirSizeCache cache, int parallelism) {
+        if (!item.isDirectory()) {
+            return getSize(item);
+        } else if (cache == null && parallelism <= 1) {
+            return getSize(item);
+        }
+
+        // 逐层统计，深层的目录树同样可以并发
+        AtomicLong sum = new AtomicLong();
+        List<File> level = Collections.singletonList(item);
+        List<Callable<DirSizeCache.Entry>> tasks = new ArrayList<>();
+        while (!level.isEmpty()) {
+            tasks.clear();
+            for (File dir : level) {
+                tasks.add(() -> {
+                    DirSizeCache.Entry entry = getDirSizeEntry(dir, cache);
+                    long size = 0;
+                    for (File file : entry.getFiles()) {
+                        size += file.length();
+                    }
+                    sum.addAndGet(size);
+                    return entry;
+                });
+            }
+
+            List<File> nextLevel = new ArrayList<>();
+            try {
+                for (DirSizeCache.Entry entry : IOExecutor.getShared().runAll(tasks, parallelism)) {
+                    Collections.addAll(nextLevel, entry.getSubDirs());
+                }
+            } catch (IOException e) {// 只有在等待时被中断才会抛出
+                LogUtil.e(e);
+                return getSize(item);
+            }
+            level = nextLevel;
+        }
+        return sum.get();
+    }
+
+    /**
+     * 获取目录直属的文件以及子目录，优先使用缓存。
+     */
+    private static DirSizeCache.Entry getDirSizeEntry(File dir, @Nullable DirSizeCache cache) {
+        long lastModified = dir.lastModified();
+        DirSizeCache.Entry entry = cache != null ? cache.get(dir, lastModified) : null;
+        if (entry != null) {
+            return entry;
+        }
+
+        List<File> files = new ArrayList<>();
+        List<File> subDirs = new ArrayList<>();
+        File[] items = dir.listFiles();
+        for (int i = 0, len = DataUtil.getSize(items); i < len; i++) {
+            if (items[i].isDirectory()) {
+                subDirs.add(items[i]);
+            } else {
+                files.add(items[i]);
+            }
+        }
+        entry = new DirSizeCache.Entry(lastModified, files.toArray(new File[files.size()]), subDirs.toArray(new File[subDirs.size()]));
+        if (cache != null) {
+            cache.put(dir, entry);
+        }
+        return entry;
+    }
+
     /**
      * 获取文件的大小或者目录下所有项目的大小，并格式化为简易的字符。
      *
@@ -557,6 +672,20 @@ public final class FileUtil {
         return formatSize(fileLen);
     }
 
+    /**
+     * 获取文件的大小或者目录下所有项目的大小，并格式化为简易的字符。
+     * 统计的方式请参阅{@link #getSize(File, DirSizeCache, int)}。
+     *
+     * @param item
+     * @param cache
+     * @param parallelism
+     * @return
+     */
+    public static String getFormattedSize(File item, @Nullable DirSizeCache cache, int parallelism) {
+        long fileLen = getSize(item, cache, parallelism);
+        return formatSize(fileLen);
+    }
+
     /**
      * 获取内置存储的总大小。
      *
@@ -749,9 +878,61 @@ public final class FileUtil {
     public @interface ConflictOperation {
     }
 
+    /**
+     * 文件操作的进度回调。回调可能发生在任意的工作线程中。
+     */
+    public interface OnProgressListener {
+
+        /**
+         * @param itemCount 已经处理的项目数
+         * @param byteCount 已经处理的字节数
+         */
+        void onProgress(long itemCount, long byteCount);
+    }
+
     /* 复制项目 */
 
-    private static File copyFile(File dstDir, File srcFile, @ConflictOperation int operation, AbsFileAppender appender) throws IOException {
+    /**
+     * 通过{@link IOUtil#transfer(FileOutputStream, FileInputStream)}将srcFile的内容写入dstFile，
+     * dstFile原有的内容会被清空。
+     *
+     * @param dstFile
+     * @param srcFile
+     * @return 写入的字节数
+     * @throws IOException
+     */
+    public static long transferFile(File dstFile, File srcFile) throws IOException {
+        FileInputStream in = new FileInputStream(srcFile);
+        FileOutputStream out;
+        try {
+            out = new FileOutputStream(dstFile);
+        } catch (IOException e) {
+            IOUtil.close(in);
+            throw e;
+        }
+        return IOUtil.transfer(out, in);
+    }
+
+    private static void beginBatch(@Nullable AbsFileAppender appender) {
+        if (appender != null) {
+            appender.beginBatch();
+        }
+    }
+
+    private static void endBatch(@Nullable AbsFileAppender appender) {
+        if (appender != null) {
+            appender.endBatch();
+        }
+    }
+
+    /**
+     * 复制文件。
+     *
+     * @param transfers 不为null时不立即复制数据，而是将{目标文件, 源文件, 新建的目标文件}加入其中，由调用者稍后写入。
+     *                  目标文件此时已被创建，因而后续的冲突检测依旧有效。
+     *                  覆盖已有的文件时第三项为null，以便调用者取消时只删除自己创建的文件。
+     */
+    private static File copyFile(File dstDir, File srcFile, @ConflictOperation int operation, AbsFileAppender appender, @Nullable List<File[]> transfers) throws IOException {
         // 获取源文件
         if (!srcFile.isFile()) {
             // 源文件不存在，或者是目录
@@ -792,14 +973,19 @@ public final class FileUtil {
         }
 
         // 确保最终位置可用
+        boolean created = !targetFile.isFile();
         confirmFile(targetFile);
 
         // 开始复制
-        IOUtil.write(new FileOutputStream(targetFile), new FileInputStream(srcFile));
+        if (transfers != null) {
+            transfers.add(new File[]{targetFile, srcFile, created ? targetFile : null});
+        } else {
+            transferFile(targetFile, srcFile);
+        }
         return targetFile;
     }
 
-    private static File copyDir(File dstDir, File srcDir, @ConflictOperation int operation, AbsFileAppender appender) throws IOException {
+    private static File copyDir(File dstDir, File srcDir, @ConflictOperation int operation, AbsFileAppender appender, @Nullable List<File[]> transfers) throws IOException {
         // 获取源目录
         if (!srcDir.isDirectory()) {
             // 源目录不存在或者并非目录
@@ -848,7 +1034,7 @@ public final class FileUtil {
 
         // 开始复制所有项目
         if (fileList != null && fileList.length != 0) {
-            copy(targetDir, fileList, operation, appender);
+            copy(targetDir, fileList, operation, appender, transfers);
         }
         return targetDir;
     }
@@ -865,10 +1051,14 @@ public final class FileUtil {
      * @throws IOException
      */
     public static File copy(File dstDir, File srcItem, @ConflictOperation int operation, AbsFileAppender appender) throws IOException {
+        return copy(dstDir, srcItem, operation, appender, (List<File[]>) null);
+    }
+
+    private static File copy(File dstDir, File srcItem, @ConflictOperation int operation, AbsFileAppender appender, @Nullable List<File[]> transfers) throws IOException {
         if (srcItem.isFile()) { // 源文件
-            return copyFile(dstDir, srcItem, operation, appender);
+            return copyFile(dstDir, srcItem, operation, appender, transfers);
         } else if (srcItem.isDirectory()) {
-            return copyDir(dstDir, srcItem, operation, appender);
+            return copyDir(dstDir, srcItem, operation, appender, transfers);
         } else {
             throw new FileNotFoundException("源项目不可用");
         }
@@ -887,13 +1077,146 @@ public final class FileUtil {
      * @throws IOException
      */
     public static File[] copy(File dstDir, File[] items, @ConflictOperation int operation, AbsFileAppender appender) throws IOException {
+        beginBatch(appender);
+        try {
+            return copy(dstDir, items, operation, appender, (List<File[]>) null);
+        } finally {
+            endBatch(appender);
+        }
+    }
+
+    private static File[] copy(File dstDir, File[] items, @ConflictOperation int operation, AbsFileAppender appender, @Nullable List<File[]> transfers) throws IOException {
         File[] fileArr = new File[items.length];
         for (int i = 0, len = items.length; i < len; i++) {
-            fileArr[i] = copy(dstDir, items[i], operation, appender);
+            fileArr[i] = copy(dstDir, items[i], operation, appender, transfers);
+        }
+        return fileArr;
+    }
+
+    /**
+     * 按照{@link #copy(File, File[], int, AbsFileAppender)}的规则处理冲突，创建好所有的目标目录和空的目标文件，
+     * 但是并不写入文件的内容，而是将{目标文件, 源文件, 新建的目标文件}按照遍历的顺序加入transfers之中，
+     * 由调用者稍后通过{@link #transferFile(File, File)}写入。目标是覆盖前已经存在的文件时第三项为null。
+     * 适用于需要自行调度、统计进度或者中途取消的复制操作。
+     *
+     * @param dstDir
+     * @param items
+     * @param operation
+     * @param appender
+     * @param transfers 用于保存待写入的文件
+     * @return 与items一一对应的复制结果，被跳过的项目为null
+     * @throws FileNotFoundException
+     * @throws FileExistsException
+     * @throws IOException
+     */
+    public static File[] planCopy(File dstDir, File[] items, @ConflictOperation int operation, AbsFileAppender appender, List<File[]> transfers) throws IOException {
+        beginBatch(appender);
+        try {
+            return copy(dstDir, items, operation, appender, transfers);
+        } finally {
+            endBatch(appender);
         }
+    }
+
+    /**
+     * 并发地批量复制项目。
+     * <p>
+     * 复制分为两步：先在当前线程按照{@link #copy(File, File[], int, AbsFileAppender)}的规则遍历所有项目，
+     * 处理冲突并创建好目标目录和空的目标文件；之后再使用{@link IOExecutor}并发地写入文件内容。
+     * 因而冲突的处理结果和返回值与串行复制完全一致。
+     * 写入过程中任意文件失败都会终止整个操作，此时已创建的目标项目不会被回滚。
+     *
+     * @param dstDir
+     * @param items
+     * @param operation
+     * @param appender
+     * @param parallelism 同时写入的文件数的上限，小于等于1时等同于串行复制
+     * @return 与items一一对应的复制结果，被跳过的项目为null
+     * @throws FileNotFoundException
+     * @throws FileExistsException
+     * @throws IOException
+     */
+    public static File[] copy(File dstDir, File[] items, @ConflictOperation int operation, AbsFileAppender appender, int parallelism) throws IOException {
+        if (parallelism <= 1) {
+            return copy(dstDir, items, operation, appender);
+        }
+
+        List<File[]> transfers = new ArrayList<>();
+        File[] fileArr = planCopy(dstDir, items, operation, appender, transfers);
+        if (transfers.isEmpty()) {
+            return fileArr;
+        }
+
+        List<Callable<Long>> tasks = new ArrayList<>(transfers.size());
+        for (File[] transfer : transfers) {
+            tasks.add(() -> transferFile(transfer[0], transfer[1]));
+        }
+        IOExecutor.getShared().runAll(tasks, parallelism);
         return fileArr;
     }
 
+    /**
+     * 复制文件的同时计算其摘要，冲突的处理与{@link #copy(File, File, int, AbsFileAppender)}一致。
+     * 数据只会从源文件读取一次；当verify为true时，写入完成后会再读取一次目标文件并比较摘要。
+     *
+     * @param dstDir
+     * @param srcFile
+     * @param operation
+     * @param appender
+     * @param verify     是否重新读取目标文件校验。校验失败时会删除目标文件并抛出异常。
+     * @param algorithms 摘要算法，比如{@link DigestUtil#ALGORITHM_MD5}，至少指定一个
+     * @return 复制后的文件及源文件数据的摘要，因{@link #CONFLICT_OPERATION_SKIP}而跳过时返回null
+     * @throws FileNotFoundException
+     * @throws FileExistsException
+     * @throws IOException
+     */
+    @Nullable
+    public static DigestedFile copyWithDigest(File dstDir, File srcFile, @ConflictOperation int operation, AbsFileAppender appender,
+                                              boolean verify, String... algorithms) throws IOException {
+        if (algorithms.length == 0) {
+            throw new IllegalArgumentException("至少需要指定一个摘要算法");
+        }
+
+        // 只处理冲突并创建目标文件，数据由下面写入
+        List<File[]> transfers = new ArrayList<>(1);
+        File targetFile = copyFile(dstDir, srcFile, operation, appender, transfers);
+        if (targetFile == null) {
+            return null;
+        }
+
+        MessageDigest[] digests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            digests[i] = DigestUtil.getInstance(algorithms[i]);
+        }
+
+        FileInputStream in = null;
+        FileOutputStream out = null;
+        try {
+            in = new FileInputStream(srcFile);
+            out = new FileOutputStream(targetFile);
+            DigestUtil.update(digests, in, out);
+        } finally {
+            IOUtil.close(out);
+            IOUtil.close(in);
+        }
+        DigestResult result = new DigestResult(digests);
+
+        if (verify) {
+            in = null;
+            try {
+                in = new FileInputStream(targetFile);
+                DigestUtil.update(digests, in, null);
+            } finally {
+                IOUtil.close(in);
+            }
+            if (!result.matches(new DigestResult(digests))) {
+                targetFile.delete();
+                throw new IOException("复制后的文件" + targetFile + "校验失败");
+            }
+        }
+        return new DigestedFile(targetFile, result);
+    }
+
     /**
      * 文件另存为。
      *
@@ -923,10 +1246,305 @@ public final class FileUtil {
         confirmFile(dstFile);
 
         // 开始复制
-        IOUtil.write(new FileOutputStream(dstFile), new FileInputStream(srcFile));
+        transferFile(dstFile, srcFile);
+        return dstFile;
+    }
+
+    /**
+     * 断点续传时临时文件的后缀
+     */
+    public static final String RESUMABLE_PART_SUFFIX = ".part";
+    /**
+     * 断点续传时记录进度的文件的后缀
+     */
+    public static final String RESUMABLE_CHECKPOINT_SUFFIX = ".ckpt";
+
+    private static final int CHECKPOINT_MAGIC = 0x434B5054;
+    private static final long CHECKPOINT_INTERVAL = 16 * 1024 * 1024;
+    private static final int CHECKPOINT_VERIFY_WINDOW = 64 * 1024;
+
+    /**
+     * 可断点续传的文件另存为，适用于较大的文件。
+     * <p>
+     * 数据先写入与dstFile同目录的{@link #RESUMABLE_PART_SUFFIX}临时文件中，
+     * 每写入一段数据就将其同步到存储设备并在{@link #RESUMABLE_CHECKPOINT_SUFFIX}文件中记录已写入的位置。
+     * 如果复制因为进程被杀或者存储被卸载而中断，再次调用该方法时会从上一个记录点继续。
+     * 继续之前会确认源文件的大小和修改时间没有变化，并校验记录点之前最后64KB的数据与源文件一致，否则从头开始。
+     * 注意更早的数据不会再次校验，如果临时文件在中断期间被其他程序改写，请删除临时文件后重新复制。
+     * 全部写入后临时文件将被重命名为dstFile。
+     *
+     * @param srcFile
+     * @param dstFile
+     * @param replaceIfExist
+     * @return
+     * @throws FileNotFoundException
+     * @throws FileExistsException
+     * @throws IOException
+     */
+    public static File saveAsResumable(File srcFile, File dstFile, boolean replaceIfExist) throws IOException {
+        // 获取源文件
+        if (!srcFile.isFile()) {
+            // 源文件不存在，或者是目录
+            throw new FileNotFoundException("源文件不可用");
+        }
+
+        // 检查目标位置合法性
+        if (isSame(srcFile, dstFile)) {
+            throw new FileExistsException("源文件和目标文件相同");
+        } else if (dstFile.isDirectory()) {
+            throw new FileExistsException("目标位置被目录占据");
+        } else if ((dstFile.exists() && !replaceIfExist)) {//冲突且不允许替换
+            throw new FileExistsException("目标目录下存在同名文件");
+        }
+
+        File partFile = new File(dstFile.getPath() + RESUMABLE_PART_SUFFIX);
+        File checkpointFile = new File(dstFile.getPath() + RESUMABLE_CHECKPOINT_SUFFIX);
+        long srcLength = srcFile.length();
+        long srcModified = srcFile.lastModified();
+
+        long offset;
+        FileInputStream in = null;
+        RandomAccessFile out = null;
+        try {
+            in = new FileInputStream(srcFile);
+            confirmFile(partFile);
+            out = new RandomAccessFile(partFile, "rw");
+            FileChannel inChannel = in.getChannel();
+            FileChannel outChannel = out.getChannel();
+
+            offset = readCheckpoint(checkpointFile, srcLength, srcModified);
+            if (offset > outChannel.size() || !isSameRange(inChannel, outChannel, offset)) {
+                offset = 0;
+            }
+            outChannel.truncate(offset);
+            outChannel.position(offset);
+
+            long count;
+            while (offset < srcLength) {
+                count = inChannel.transferTo(offset, Math.min(CHECKPOINT_INTERVAL, srcLength - offset), outChannel);
+                if (count <= 0) {// transferTo没有进展，与IOUtil.transfer一样换用transferFrom
+                    inChannel.position(offset);
+                    count = outChannel.transferFrom(inChannel, offset, Math.min(CHECKPOINT_INTERVAL, srcLength - offset));
+                    if (count <= 0) {// 源文件被截短了，由下面的检查报告
+                        break;
+                    }
+                    outChannel.position(offset + count);
+                }
+                offset += count;
+                outChannel.force(false);// 确保数据落盘之后才记录
+                writeCheckpoint(checkpointFile, srcLength, srcModified, offset);
+            }
+        } finally {
+            IOUtil.close(out);
+            IOUtil.close(in);
+        }
+
+        if (offset != srcLength || srcFile.lastModified() != srcModified || srcFile.length() != srcLength) {
+            throw new IOException("源文件在复制过程中被修改");
+        }
+        if (!partFile.renameTo(dstFile) && !(delete(dstFile) && partFile.renameTo(dstFile))) {
+            throw new IOException("无法将临时文件重命名为" + dstFile);
+        }
+        checkpointFile.delete();
         return dstFile;
     }
 
+    /**
+     * @return 记录的位置，记录不存在或者源文件已经变化时返回0
+     */
+    private static long readCheckpoint(File checkpointFile, long srcLength, long srcModified) {
+        if (!checkpointFile.isFile()) {
+            return 0;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(checkpointFile));
+            if (in.readInt() == CHECKPOINT_MAGIC && in.readLong() == srcLength && in.readLong() == srcModified) {
+                long offset = in.readLong();
+                return offset >= 0 && offset <= srcLength ? offset : 0;
+            }
+        } catch (IOException e) {// 记录损坏，从头开始
+            LogUtil.e(e);
+        } finally {
+            IOUtil.close(in);
+        }
+        return 0;
+    }
+
+    private static void writeCheckpoint(File checkpointFile, long srcLength, long srcModified, long offset) throws IOException {
+        File tmpFile = new File(checkpointFile.getPath() + ".tmp");
+        FileOutputStream fileOut = new FileOutputStream(tmpFile);
+        DataOutputStream out = new DataOutputStream(fileOut);
+        try {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeLong(srcLength);
+            out.writeLong(srcModified);
+            out.writeLong(offset);
+            out.flush();
+            fileOut.getFD().sync();
+        } finally {
+            IOUtil.close(out);
+        }
+        if (!tmpFile.renameTo(checkpointFile)) {
+            throw new IOException("无法写入断点记录");
+        }
+    }
+
+    /**
+     * 校验两个通道在offset之前{@link #CHECKPOINT_VERIFY_WINDOW}大小的数据是否一致
+     */
+    private static boolean isSameRange(FileChannel channel1, FileChannel channel2, long offset) throws IOException {
+        if (offset == 0) {
+            return true;
+        }
+
+        long start = Math.max(0, offset - CHECKPOINT_VERIFY_WINDOW);
+        return crc32(channel1, start, offset) == crc32(channel2, start, offset);
+    }
+
+    private static long crc32(FileChannel channel, long start, long end) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                return -1;
+            }
+        }
+        crc.update(buffer.array(), 0, buffer.position());
+        return crc.getValue();
+    }
+
+	/* 同步目录 */
+
+    /**
+     * 增量地将srcDir下的所有项目同步到dstDir之下，使dstDir成为srcDir的镜像。
+     * 注意与{@link #copy(File, File, int, AbsFileAppender)}不同，这里不会在dstDir下再创建srcDir的同名目录。
+     * <p>
+     * 判断文件是否变化的规则如下：
+     * <li/>目标不存在或者类型不同时视为新增；
+     * <li/>大小不同时视为已变化；
+     * <li/>大小相同且修改时间相差不超过{@link #SYNC_MODIFIED_TOLERANCE}时视为没有变化；
+     * <li/>目标的修改时间较新时，说明上次同步时没能设置目标的修改时间，此时总是比较二者的摘要，
+     * digestAlgorithm为null时使用{@link DigestUtil#ALGORITHM_MD5}；
+     * <li/>源文件的修改时间较新时，如果指定了digestAlgorithm则比较二者的摘要，否则视为已变化。
+     * <p>
+     * 复制后会将目标文件的修改时间设为与源文件相同，以便下一次同步时能直接跳过。
+     * 外部存储的FAT或者sdcardfs上修改时间的精度只有2秒，甚至可能无法修改，因而比较时允许一定的误差。
+     *
+     * @param srcDir
+     * @param dstDir          不存在时会被创建
+     * @param prune           是否删除目标目录中源目录已经不存在的项目
+     * @param digestAlgorithm 修改时间不同时用于比较内容的摘要算法，比如{@link DigestUtil#ALGORITHM_MD5}，为null时不比较
+     * @return
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static SyncReport sync(File srcDir, File dstDir, boolean prune, @Nullable String digestAlgorithm) throws IOException {
+        if (!srcDir.isDirectory()) {
+            throw new FileNotFoundException("源目录不可用");
+        } else if (isSame(srcDir, dstDir) || isInDir(srcDir, dstDir)) {
+            throw new FileNotFoundException("不允许将目录同步到自身目录及其下级目录");
+        }
+
+        SyncReport report = new SyncReport();
+        boolean created = !dstDir.exists();
+        confirmDir(dstDir);
+        if (created) {
+            report.onAdded(dstDir, 0);
+        }
+        syncDir(srcDir, dstDir, prune, digestAlgorithm, report);
+        return report;
+    }
+
+    private static void syncDir(File srcDir, File dstDir, boolean prune, @Nullable String digestAlgorithm, SyncReport report) throws IOException {
+        File[] srcItems = srcDir.listFiles();
+        int len = DataUtil.getSize(srcItems);
+        Set<String> names = prune ? new HashSet<>(len) : null;
+
+        File srcItem, dstItem;
+        for (int i = 0; i < len; i++) {
+            srcItem = srcItems[i];
+            dstItem = new File(dstDir, srcItem.getName());
+            if (names != null) {
+                names.add(srcItem.getName());
+            }
+
+            if (srcItem.isDirectory()) {
+                if (!dstItem.isDirectory()) {
+                    if (dstItem.exists()) {// 同名的文件
+                        report.onRemoved(dstItem);
+                    }
+                    confirmDir(dstItem);
+                    report.onAdded(dstItem, 0);
+                }
+                syncDir(srcItem, dstItem, prune, digestAlgorithm, report);
+            } else if (!dstItem.isFile()) {
+                if (dstItem.exists()) {// 同名的目录
+                    report.onRemoved(dstItem);
+                }
+                confirmFile(dstItem);
+                report.onAdded(dstItem, syncFile(dstItem, srcItem));
+            } else if (isFileChanged(dstItem, srcItem, digestAlgorithm)) {
+                report.onUpdated(dstItem, syncFile(dstItem, srcItem));
+            } else {
+                report.onUnchanged();
+            }
+        }
+
+        if (names != null) {
+            File[] dstItems = dstDir.listFiles();
+            for (int i = 0, dstLen = DataUtil.getSize(dstItems); i < dstLen; i++) {
+                if (!names.contains(dstItems[i].getName())) {
+                    if (delete(dstItems[i])) {
+                        report.onRemoved(dstItems[i]);
+                    } else {
+                        throw new IOException("无法删除" + dstItems[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 同步时允许的修改时间的误差，FAT上修改时间的精度为2秒
+     */
+    public static final long SYNC_MODIFIED_TOLERANCE = 2000;
+
+    private static boolean isFileChanged(File dstFile, File srcFile, @Nullable String digestAlgorithm) throws IOException {
+        if (dstFile.length() != srcFile.length()) {
+            return true;
+        }
+
+        long srcModified = srcFile.lastModified();
+        long dstModified = dstFile.lastModified();
+        if (Math.abs(dstModified - srcModified) <= SYNC_MODIFIED_TOLERANCE) {
+            return false;
+        } else if (dstModified > srcModified) {// 复制之后源文件没有再修改过，只是没能设置目标的修改时间
+            digestAlgorithm = digestAlgorithm != null ? digestAlgorithm : DigestUtil.ALGORITHM_MD5;
+        } else if (digestAlgorithm == null) {
+            return true;
+        }
+
+        boolean changed = !DigestUtil.digest(digestAlgorithm, dstFile).equals(DigestUtil.digest(digestAlgorithm, srcFile));
+        if (!changed) {// 内容一致，同步修改时间以免下次再比较摘要
+            setSyncModified(dstFile, srcModified);
+        }
+        return changed;
+    }
+
+    private static long syncFile(File dstFile, File srcFile) throws IOException {
+        long bytes = transferFile(dstFile, srcFile);
+        setSyncModified(dstFile, srcFile.lastModified());
+        return bytes;
+    }
+
+    private static void setSyncModified(File dstFile, long modified) {
+        if (!dstFile.setLastModified(modified)) {// 下次同步时会改为比较摘要
+            LogUtil.e("无法设置修改时间：" + dstFile);
+        }
+    }
+
 	/* 移动项目 */
 
     /**
@@ -946,6 +1564,25 @@ public final class FileUtil {
      * @throws IOException
      */
     public static File move(File dstDir, File srcItem, @ConflictOperation int operation, AbsFileAppender appender) throws IOException {
+        File targetFile = resolveMoveTarget(dstDir, srcItem, operation, appender);
+        if (targetFile == null) {
+            return null;
+        }
+
+        // 判断是否成功剪切
+        if (srcItem.renameTo(targetFile)) {
+            return targetFile;
+        } else {
+            throw new IOException("可能由于文件系统的差异或者权限不足导致移动失败");
+        }
+    }
+
+    /**
+     * 检查移动的参数并处理冲突
+     *
+     * @return 移动的目标位置，被跳过时返回null
+     */
+    private static File resolveMoveTarget(File dstDir, File srcItem, @ConflictOperation int operation, AbsFileAppender appender) throws IOException {
         // 获取源文件
         if (!srcItem.exists()) {
             // 源文件不存在
@@ -992,13 +1629,7 @@ public final class FileUtil {
                     throw new IllegalArgumentException("指定操作模式不合法");
             }
         }
-
-        // 判断是否成功剪切
-        if (srcItem.renameTo(targetFile)) {
-            return targetFile;
-        } else {
-            throw new IOException("可能由于文件系统的差异或者权限不足导致移动失败");
-        }
+        return targetFile;
     }
 
     /**
@@ -1015,8 +1646,13 @@ public final class FileUtil {
      */
     public static File[] move(File dstDir, File[] srcItems, @ConflictOperation int operation, AbsFileAppender appender) throws IOException {
         File[] fileArr = new File[srcItems.length];
-        for (int i = 0, len = srcItems.length; i < len; i++) {
-            fileArr[i] = move(dstDir, srcItems[i], CONFLICT_OPERATION_APPEND_TAG, appender);
+        beginBatch(appender);
+        try {
+            for (int i = 0, len = srcItems.length; i < len; i++) {
+                fileArr[i] = move(dstDir, srcItems[i], CONFLICT_OPERATION_APPEND_TAG, appender);
+            }
+        } finally {
+            endBatch(appender);
         }
         return fileArr;
     }
@@ -1026,7 +1662,9 @@ public final class FileUtil {
     /**
      * 先尝试使用{@link #move(File, File, int, AbsFileAppender)}
      * 方法进行移动操作，当操作抛出{@link IOException#}时说明{@link File#renameTo(File)}方法执行不成。
-     * 此时换用复制成功后删除的方式移动文件。
+     * 此时换用逐个文件移动的方式：每个文件先尝试重命名，失败时复制并校验大小，之后立刻删除源文件，
+     * 因而移动过程中额外占用的空间不超过一个文件的大小。
+     * 中途失败时已经移动的文件会被移回原处，并删除已创建的目标项目。
      * <p>
      * 如果使用{@link #move(File, File, int, AbsFileAppender)}时抛出了{@link FileNotFoundException#}或者{@link FileExistsException#}
      * 异常的话，说明参数或者状态不合法，将直接终止操作。
@@ -1043,20 +1681,67 @@ public final class FileUtil {
      * @throws IOException
      */
     public static File moveEx(File dstDir, File srcItem, @ConflictOperation int operation, AbsFileAppender appender) throws IOException {
+        FileMover mover = planMove(dstDir, srcItem, operation, appender);
+        if (mover == null) {
+            return null;
+        }
+
         try {
-            // 使用普通的移动方法
-            return move(dstDir, srcItem, operation, appender);
-        } catch (FileNotFoundException | FileExistsException e) {// 抛出这些异常说明参数有问题
-            // 重抛出无法处理的异常，这里不需要打印栈信息
+            while (mover.hasNext()) {
+                mover.moveNext();
+            }
+        } catch (IOException e) {
+            mover.rollback();
             throw e;
+        }
+        mover.finish();
+        return mover.getTargetItem();
+    }
+
+    /**
+     * 按照{@link #moveEx(File, File, int, AbsFileAppender)}的规则处理冲突，并尝试直接重命名。
+     * 无法重命名时创建好目标目录和空的目标文件，返回的{@link FileMover}中记录了所有待移动的文件，
+     * 由调用者逐个移动，适用于需要统计进度或者中途取消的移动操作。
+     * 冲突只会处理一次，因而使用{@link AbsFileAppender}时目标的名称与直接重命名时一致。
+     *
+     * @param dstDir
+     * @param srcItem
+     * @param operation
+     * @param appender
+     * @return 被跳过时返回null；直接重命名成功时返回的FileMover中没有待移动的文件
+     * @throws FileNotFoundException
+     * @throws FileExistsException
+     * @throws IOException
+     */
+    @Nullable
+    public static FileMover planMove(File dstDir, File srcItem, @ConflictOperation int operation, AbsFileAppender appender) throws IOException {
+        File targetItem = resolveMoveTarget(dstDir, srcItem, operation, appender);
+        if (targetItem == null) {
+            return null;
+        }
+
+        List<File[]> transfers = new ArrayList<>();
+        if (srcItem.renameTo(targetItem)) {
+            return new FileMover(srcItem, targetItem, transfers);
+        }
+
+        // 目标项目是新创建的，子项目不会发生冲突
+        try {
+            if (srcItem.isDirectory()) {
+                File[] fileList = srcItem.listFiles();
+                confirmDir(targetItem);
+                if (fileList != null && fileList.length != 0) {
+                    copy(targetItem, fileList, CONFLICT_OPERATION_TERMINATE, null, transfers);
+                }
+            } else {
+                confirmFile(targetItem);
+                transfers.add(new File[]{targetItem, srcItem, targetItem});
+            }
         } catch (IOException e) {
-            // LogUtil.e(e);这里不需要打印栈信息
-            // 当抛出IO异常的时候可以知道是剪切操作因为rename操作的原因失败
-            // 此时使用复制成功后删除的方法操作
-            File result = copy(dstDir, srcItem, operation, appender);
-            delete(srcItem);
-            return result;
+            delete(targetItem);
+            throw e;
         }
+        return new FileMover(srcItem, targetItem, transfers);
     }
 
     /**
@@ -1074,8 +1759,13 @@ public final class FileUtil {
      */
     public static File[] moveEx(File dstDir, File[] srcItems, @ConflictOperation int operate, AbsFileAppender appender) throws IOException {
         File[] fileArr = new File[srcItems.length];
-        for (int i = 0, len = srcItems.length; i < len; i++) {
-            fileArr[i] = moveEx(dstDir, srcItems[i], operate, appender);
+        beginBatch(appender);
+        try {
+            for (int i = 0, len = srcItems.length; i < len; i++) {
+                fileArr[i] = moveEx(dstDir, srcItems[i], operate, appender);
+            }
+        } finally {
+            endBatch(appender);
         }
         return fileArr;
     }
@@ -1117,4 +1807,91 @@ public final class FileUtil {
         }
         return resultArr;
     }
+
+    /**
+     * 并发地批量删除项目。
+     * <p>
+     * 先在当前线程中遍历目录，每个目录下的直属文件作为一个任务由{@link IOExecutor#getShared()}并发删除，
+     * 全部文件处理完毕之后再自底向上地删除目录。
+     * 与{@link #delete(File...)}不同，某个项目删除失败并不会终止整个操作，所有失败的项目都会记录在结果中。
+     * 当前线程被中断时会停止所有的任务并等待其退出，不再删除目录，返回的结果只包含已经处理的项目。
+     *
+     * @param parallelism 同时删除的任务数，小于等于1时在当前线程删除
+     * @param listener    进度回调，可以为null。回调发生在工作线程中。
+     * @param items
+     * @return
+     */
+    public static DeleteResult delete(int parallelism, @Nullable OnProgressListener listener, File... items) {
+        DeleteResult result = new DeleteResult(listener);
+        boolean parallel = parallelism > 1;
+        List<Callable<Void>> tasks = new ArrayList<>();
+        List<File> dirs = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        for (File item : items) {
+            if (item.isDirectory()) {
+                dirs.add(item);
+            } else if (item.exists()) {
+                files.add(item);
+            } else {
+                result.onFailed(item);
+            }
+        }
+        addDeleteTask(parallel, tasks, files, result);
+
+        // dirs同时作为遍历的队列，遍历结束后即是所有目录的先序排列
+        File[] subItems;
+        for (int i = 0; i < dirs.size(); i++) {
+            subItems = dirs.get(i).listFiles();
+            files = new ArrayList<>();
+            for (int j = 0, len = DataUtil.getSize(subItems); j < len; j++) {
+                if (subItems[j].isDirectory()) {
+                    dirs.add(subItems[j]);
+                } else {
+                    files.add(subItems[j]);
+                }
+            }
+            addDeleteTask(parallel, tasks, files, result);
+        }
+
+        try {
+            // 被中断时会取消剩余的任务，并等待正在执行的任务退出，以免其继续写入结果
+            IOExecutor.getShared().runAll(tasks, parallelism);
+        } catch (IOException e) {// 删除任务不会抛出异常，只有在等待时被中断才会抛出
+            return result;
+        }
+
+        // 子目录总是排在上级目录之后，逆序删除即可保证自底向上
+        File dir;
+        for (int i = dirs.size() - 1; i >= 0; i--) {
+            dir = dirs.get(i);
+            if (dir.delete()) {
+                result.onDeleted(0);
+            } else {
+                result.onFailed(dir);
+            }
+        }
+        return result;
+    }
+
+    private static void addDeleteTask(boolean parallel, List<Callable<Void>> tasks, List<File> files, DeleteResult result) {
+        if (files.isEmpty()) {
+            return;
+        }
+
+        tasks.add(() -> {
+            long length;
+            for (File file : files) {
+                if (parallel && Thread.currentThread().isInterrupted()) {// 任务被取消
+                    break;
+                }
+                length = file.length();
+                if (file.delete()) {
+                    result.onDeleted(length);
+                } else {
+                    result.onFailed(file);
+                }
+            }
+            return null;
+        });
+    }
 }
\ No newline at end of file
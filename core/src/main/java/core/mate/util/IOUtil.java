@@ -2,12 +2,23 @@ package core.mate.util;
 
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
 
 /**
  * 专门用于处理IO操作的工具类
@@ -55,23 +66,170 @@ public final class IOUtil {
         return new String(read(in), charset);
     }
 
+    /**
+     * 读取输入流中的所有数据，完成后关闭输入流。
+     * 对于文件输入流，会按照其剩余的长度一次性分配好结果数组；其他输入流请使用{@link #read(InputStream, int)}传入预计的长度。
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
     public static byte[] read(InputStream in) throws IOException {
-        ByteArrayOutputStream byteArrOut = null;
+        return read(in, estimateLength(in));
+    }
+
+    /**
+     * 读取文件中的所有数据
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static byte[] read(File file) throws IOException {
+        return read(new FileInputStream(file), (int) Math.min(file.length(), Integer.MAX_VALUE - 8));
+    }
+
+    /**
+     * 读取输入流中的所有数据，完成后关闭输入流。
+     *
+     * @param in
+     * @param expectedLength 预计的数据长度，用于预先分配结果数组。不确定时传入0。
+     * @return
+     * @throws IOException
+     */
+    public static byte[] read(InputStream in, int expectedLength) throws IOException {
+        byte[] buffer = null;
         try {
-            byteArrOut = new ByteArrayOutputStream();
-            byte[] buffer = new byte[1024];
+            ByteArrayOutputStream byteArrOut;
+            if (expectedLength > 0) {
+                byte[] data = new byte[expectedLength];
+                int pos = 0;
+                int len;
+                while (pos < expectedLength && (len = in.read(data, pos, expectedLength - pos)) != -1) {
+                    pos += len;
+                }
+                if (pos < expectedLength) {// 数据比预期的短
+                    return Arrays.copyOf(data, pos);
+                }
+                int next = in.read();
+                if (next == -1) {// 恰好读完，无需再复制
+                    return data;
+                }
+                // 数据比预期的长，退回到一般的方式
+                byteArrOut = new ByteArrayOutputStream(Math.max(expectedLength * 2, BufferPool.DEFAULT_BUFFER_SIZE));
+                byteArrOut.write(data, 0, pos);
+                byteArrOut.write(next);
+            } else {
+                byteArrOut = new ByteArrayOutputStream(BufferPool.DEFAULT_BUFFER_SIZE);
+            }
+
+            buffer = BufferPool.acquireBytes(BufferPool.DEFAULT_BUFFER_SIZE);
             int len;
             while ((len = in.read(buffer)) != -1) {
                 byteArrOut.write(buffer, 0, len);
             }
-            byteArrOut.flush();
             return byteArrOut.toByteArray();
         } finally {
-            close(byteArrOut);
+            if (buffer != null) {
+                BufferPool.release(buffer);
+            }
             close(in);
         }
     }
 
+    /**
+     * 估计输入流剩余数据的长度。
+     * 只有文件输入流能通过其通道得到准确的长度；{@link InputStream#available()}只表示不阻塞时能读取的字节数，
+     * 网络和解压的输入流通常返回0或者很小的值，并不能用来估计长度。
+     *
+     * @param in
+     * @return 无法估计时返回0
+     */
+    private static int estimateLength(InputStream in) {
+        if (!(in instanceof FileInputStream)) {
+            return 0;
+        }
+        try {
+            FileChannel channel = ((FileInputStream) in).getChannel();
+            long length = channel.size() - channel.position();
+            return length > 0 && length < Integer.MAX_VALUE - 8 ? (int) length : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+	/* 内存映射 */
+
+    /**
+     * 小于该大小的文件映射到内存中并不划算，直接读取到堆中
+     */
+    public static final int MAP_THRESHOLD = 64 * 1024;
+
+    /**
+     * 将整个文件以只读的方式映射到内存中，具体实现请参阅{@link #map(File, long, long)}。
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static ByteBuffer map(File file) throws IOException {
+        return map(file, 0, file.length());
+    }
+
+    /**
+     * 以只读的方式将文件的指定区域映射到内存中，适用于较大的只读数据文件。
+     * 返回的缓冲区在文件关闭之后依然有效，其占用的内存由系统按需换入换出，并在缓冲区被回收之后释放。
+     * 当区域小于{@link #MAP_THRESHOLD}时直接读入堆中，此时返回的并非{@link MappedByteBuffer}。
+     *
+     * @param file
+     * @param position 区域的起始位置
+     * @param size     区域的大小，不能超过{@link Integer#MAX_VALUE}
+     * @return 只读的缓冲区
+     * @throws IOException
+     */
+    public static ByteBuffer map(File file, long position, long size) throws IOException {
+        if (position < 0 || size < 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("指定的区域不合法");
+        }
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            size = Math.max(0, Math.min(size, channel.size() - position));
+            if (size >= MAP_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            return buffer.asReadOnlyBuffer();
+        } finally {
+            close(raf);
+        }
+    }
+
+    /**
+     * 将缓冲区中剩余的字节直接解码为字符，不会改变buffer的位置。
+     * 无法解码的字节会被替换为替代字符，与{@link java.io.InputStreamReader}的行为一致。
+     *
+     * @param buffer
+     * @param charset
+     * @return 解码后的字符缓冲区，其内部是一个数组
+     * @throws CharacterCodingException
+     */
+    public static CharBuffer decode(ByteBuffer buffer, Charset charset) throws CharacterCodingException {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .decode(buffer.duplicate());
+    }
+
 	/* 写操作 */
 
     /**
@@ -94,17 +252,76 @@ public final class IOUtil {
     }
 
     public static void write(OutputStream out, InputStream in) throws IOException {
-        // 创建临时变量准备输入
-        byte[] data = new byte[1024];
+        // 从缓冲池中获取临时变量准备输入
+        byte[] data = BufferPool.acquireBytes(BufferPool.DEFAULT_BUFFER_SIZE);
         int len;
         // 将数据写入指定的文件
         try {
             while ((len = in.read(data)) != -1) {
                 out.write(data, 0, len);
             }
+        } finally {
+            BufferPool.release(data);
+            close(in);
+            close(out);
+        }
+    }
+
+	/* 通道传输 */
+
+    /**
+     * 单次调用{@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}时传输的最大字节数。
+     * 部分设备上一次传输过大的数据会失败，故分段进行。
+     */
+    private static final long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * 使用{@link FileChannel}在文件之间传输数据。在支持的系统上数据直接在内核中拷贝，
+     * 不会经过堆上的缓冲区，远快于{@link #write(OutputStream, InputStream)}。
+     * 传输结束后会关闭两个流。
+     *
+     * @param out
+     * @param in
+     * @return 传输的字节数
+     * @throws IOException
+     */
+    public static long transfer(FileOutputStream out, FileInputStream in) throws IOException {
+        try {
+            return transfer(out.getChannel(), in.getChannel());
         } finally {
             close(in);
             close(out);
         }
     }
+
+    /**
+     * 从in的当前位置开始将剩余的数据全部传输到out中。该方法不会关闭通道。
+     * 优先使用{@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}，
+     * 当其无法推进时改用{@link FileChannel#transferFrom(java.nio.channels.ReadableByteChannel, long, long)}。
+     *
+     * @param out
+     * @param in
+     * @return 传输的字节数
+     * @throws IOException
+     */
+    public static long transfer(FileChannel out, FileChannel in) throws IOException {
+        long position = in.position();
+        long size = in.size();
+        long outPosition = out.position();
+        long count;
+        while (position < size) {
+            count = in.transferTo(position, Math.min(size - position, TRANSFER_CHUNK_SIZE), out);
+            if (count <= 0) {// transferTo没有进展，换用transferFrom
+                in.position(position);
+                count = out.transferFrom(in, out.position(), Math.min(size - position, TRANSFER_CHUNK_SIZE));
+                if (count <= 0) {// 源文件在传输过程中被截短了
+                    break;
+                }
+                out.position(out.position() + count);
+            }
+            position += count;
+        }
+        in.position(position);
+        return out.position() - outPosition;
+    }
 }
@@ -13,6 +13,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
@@ -65,16 +66,20 @@ public final class TextUtil {
             // 读取并计数
             charset = charset != null ? charset : Charset.defaultCharset();
             reader = new BufferedReader(new InputStreamReader(new FileInputStream(txtFile), charset));
-            char[] buff = new char[1024];
-            int len;
-            if (filter != null) {
-                while ((len = reader.read(buff)) != -1) {
-                    count += filter.count(buff, 0, len);
-                }
-            } else {
-                while ((len = reader.read(buff)) != -1) {
-                    count += len;
+            char[] buff = BufferPool.acquireChars(BufferPool.DEFAULT_BUFFER_SIZE);
+            try {
+                int len;
+                if (filter != null) {
+                    while ((len = reader.read(buff)) != -1) {
+                        count += filter.count(buff, 0, len);
+                    }
+                } else {
+                    while ((len = reader.read(buff)) != -1) {
+                        count += len;
+                    }
                 }
+            } finally {
+                BufferPool.release(buff);
             }
             return count;
         } finally {
@@ -167,23 +172,27 @@ public final class TextUtil {
             buffReader = new BufferedReader(inReader);
             // 因为读取的文本最长长度已知，这里直接设置StringBuilder的长度
             StringBuilder builder = new StringBuilder(len);
-            char[] buff = new char[128];// 128长度是足够的
+            char[] buff = BufferPool.acquireChars(Math.min(len, BufferPool.DEFAULT_BUFFER_SIZE));
             int bufferedLen, i, sum = 0;
             char ch;
             AbsCharFilter charFilter = new NotCharFilter(NotCharFilter.SAMPLE_EMPTY);
-            mainLoop:
-            while ((bufferedLen = buffReader.read(buff)) > 0) {
-                for (i = 0; i < bufferedLen; i++) {
-                    ch = buff[i];
-                    if (charFilter.accept(ch)) {
-                        builder.append(ch);
-
-                        // 检查是否读取完毕
-                        if (++sum >= len) {
-                            break mainLoop;// 跳出多层循环
+            try {
+                mainLoop:
+                while ((bufferedLen = buffReader.read(buff)) > 0) {
+                    for (i = 0; i < bufferedLen; i++) {
+                        ch = buff[i];
+                        if (charFilter.accept(ch)) {
+                            builder.append(ch);
+
+                            // 检查是否读取完毕
+                            if (++sum >= len) {
+                                break mainLoop;// 跳出多层循环
+                            }
                         }
                     }
                 }
+            } finally {
+                BufferPool.release(buff);
             }
             return builder.toString();
         } finally {
@@ -227,6 +236,74 @@ public final class TextUtil {
         }
     }
 
+	/* 内存映射读取 */
+
+    /**
+     * 通过{@link IOUtil#map(File)}将文件映射到内存中并直接解码为字符串，适用于较大的只读文本文件。
+     * 与{@link #readText(File, Charset, LineSeparator)}不同，这里不会统一换行符。
+     *
+     * @param txtFile
+     * @param charset 为null时使用默认编码
+     * @return
+     * @throws IOException
+     */
+    public static String readMappedText(File txtFile, @Nullable Charset charset) throws IOException {
+        if (!txtFile.isFile()) {// 不是文件
+            throw new FileNotFoundException("文件不可用");
+        }
+
+        charset = charset != null ? charset : Charset.defaultCharset();
+        return IOUtil.decode(IOUtil.map(txtFile), charset).toString();
+    }
+
+    /**
+     * 通过{@link IOUtil#map(File)}将文件映射到内存中，解码后按行分割。
+     * 行的规则与{@link BufferedReader#readLine()}一致，即以“\n”、“\r”或者“\r\n”结尾。
+     *
+     * @param txtFile
+     * @param charset 为null时使用默认编码
+     * @return
+     * @throws IOException
+     */
+    public static List<String> readMappedLines(File txtFile, @Nullable Charset charset) throws IOException {
+        if (!txtFile.isFile()) {// 不是文件
+            throw new FileNotFoundException("文件不可用");
+        }
+
+        charset = charset != null ? charset : Charset.defaultCharset();
+        return splitLines(IOUtil.decode(IOUtil.map(txtFile), charset));
+    }
+
+    /**
+     * 按行分割字符缓冲区中剩余的字符，不会改变其位置。
+     *
+     * @param chars
+     * @return
+     */
+    public static List<String> splitLines(CharBuffer chars) {
+        List<String> lines = new ArrayList<>();
+        char[] array = chars.hasArray() ? chars.array() : null;
+        int offset = array != null ? chars.arrayOffset() : 0;
+        int start = chars.position();
+        int end = chars.limit();
+        int lineStart = start;
+        char ch;
+        for (int i = start; i < end; i++) {
+            ch = chars.get(i);
+            if (ch == '\n' || ch == '\r') {
+                lines.add(array != null ? new String(array, offset + lineStart, i - lineStart) : chars.subSequence(lineStart - start, i - start).toString());
+                if (ch == '\r' && i + 1 < end && chars.get(i + 1) == '\n') {
+                    i++;
+                }
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < end) {// 最后一行没有换行符
+            lines.add(array != null ? new String(array, offset + lineStart, end - lineStart) : chars.subSequence(lineStart - start, end - start).toString());
+        }
+        return lines;
+    }
+
 	/* 写入 */
 
     public static void writeText(File txtFile, String content) throws IOException {
@@ -0,0 +1,535 @@
+package core.mate.util;
+
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import core.mate.async.IOExecutor;
+import core.mate.content.CancelSignal;
+import core.mate.content.ExtMatcher;
+import core.mate.content.FileExistsException;
+import core.mate.content.FileWalker;
+
+/**
+ * zip压缩和解压的工具类，所有的操作都是流式的，不会将整个文件读入内存。
+ *
+ * @author DrkCore
+ * @since 2017年2月16日10:15:33
+ */
+public final class ZipUtil {
+
+    private ZipUtil() {
+    }
+
+    /**
+     * 默认不再压缩的文件，这些格式本身已经经过压缩，再次压缩只会浪费时间
+     */
+    public static final ExtMatcher DEFAULT_STORED_EXTS = new ExtMatcher(
+            "zip", "rar", "7z", "gz", "tgz", "bz2", "xz", "apk", "jar",
+            "jpg", "jpeg", "png", "gif", "webp",
+            "mp3", "aac", "m4a", "ogg", "flac",
+            "mp4", "m4v", "3gp", "mkv", "avi", "flv", "rmvb", "webm");
+
+	/* 压缩 */
+
+    /**
+     * 使用{@link #DEFAULT_STORED_EXTS}压缩项目，具体请参阅{@link #pack(File, File[], FileFilter, FileUtil.OnProgressListener, CancelSignal)}
+     *
+     * @param zipFile
+     * @param items
+     * @return
+     * @throws IOException
+     */
+    public static File pack(File zipFile, File... items) throws IOException {
+        return pack(zipFile, items, DEFAULT_STORED_EXTS, null, null);
+    }
+
+    /**
+     * 将项目压缩到zipFile中，已存在的zipFile会被覆盖。
+     * 每个项目以其自身的名称作为压缩包中的顶层项目，目录下的所有项目（包括隐藏项目和空目录）都会被压缩。
+     * 失败或者被取消时会删除未完成的zipFile。
+     *
+     * @param zipFile
+     * @param items
+     * @param storedFilter 通过过滤的文件直接存储而不压缩，为null时全部压缩
+     * @param listener     进度回调，可以为null
+     * @param signal       取消信号，可以为null
+     * @return zipFile
+     * @throws FileNotFoundException 项目不存在
+     * @throws java.io.InterruptedIOException 操作被取消
+     * @throws IOException
+     */
+    public static File pack(File zipFile, File[] items, @Nullable FileFilter storedFilter,
+                            @Nullable FileUtil.OnProgressListener listener, @Nullable CancelSignal signal) throws IOException {
+        zipFile = zipFile.getAbsoluteFile();
+        File parent = zipFile.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile)));
+        byte[] buffer = BufferPool.acquireBytes(BufferPool.DEFAULT_BUFFER_SIZE);
+        boolean success = false;
+        try {
+            long itemCount = 0;
+            long byteCount = 0;
+            String name;
+            for (File item : items) {
+                item = item.getAbsoluteFile();
+                if (!item.exists()) {
+                    throw new FileNotFoundException("源项目不可用：" + item);
+                }
+
+                String baseDir = item.getParent();
+                int baseLen = baseDir == null ? 0 : baseDir.endsWith(File.separator) ? baseDir.length() : baseDir.length() + 1;
+                for (File file : new FileWalker(item).setAllowHiddenDir(true).setIncludeDir(true)) {
+                    if (signal != null) {
+                        signal.throwIfCancelled();
+                    }
+                    if (file.equals(zipFile)) {// 压缩包本身位于目录之中
+                        continue;
+                    }
+
+                    name = file.getPath().substring(baseLen).replace(File.separatorChar, '/');
+                    if (file.isDirectory()) {
+                        ZipEntry entry = new ZipEntry(name + '/');
+                        entry.setTime(file.lastModified());
+                        out.putNextEntry(entry);
+                        out.closeEntry();
+                    } else {
+                        byteCount += writeEntry(out, file, name, storedFilter != null && storedFilter.accept(file), buffer, signal);
+                        itemCount++;
+                        if (listener != null) {
+                            listener.onProgress(itemCount, byteCount);
+                        }
+                    }
+                }
+            }
+            out.finish();
+            out.flush();
+            success = true;
+        } finally {
+            BufferPool.release(buffer);
+            IOUtil.close(out);
+            if (!success) {
+                zipFile.delete();
+            }
+        }
+        return zipFile;
+    }
+
+    private static long writeEntry(ZipOutputStream out, File file, String name, boolean stored, byte[] buffer,
+                                   @Nullable CancelSignal signal) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTime(file.lastModified());
+        if (stored) {// 直接存储时需要预先知道大小和CRC
+            long length = file.length();
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(length);
+            entry.setCompressedSize(length);
+            entry.setCrc(crc32(file, buffer, signal));
+        }
+        out.putNextEntry(entry);
+
+        long total = 0;
+        InputStream in = new FileInputStream(file);
+        try {
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                if (signal != null) {
+                    signal.throwIfCancelled();
+                }
+                out.write(buffer, 0, len);
+                total += len;
+            }
+        } finally {
+            IOUtil.close(in);
+        }
+        out.closeEntry();
+        return total;
+    }
+
+    private static long crc32(File file, byte[] buffer, @Nullable CancelSignal signal) throws IOException {
+        CRC32 crc32 = new CRC32();
+        InputStream in = new FileInputStream(file);
+        try {
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                if (signal != null) {
+                    signal.throwIfCancelled();
+                }
+                crc32.update(buffer, 0, len);
+            }
+        } finally {
+            IOUtil.close(in);
+        }
+        return crc32.getValue();
+    }
+
+	/* 解压 */
+
+    /**
+     * 使用默认的并发数解压，具体请参阅{@link #unpack(File, File, int, AbsFileAppender, int, FileUtil.OnProgressListener, CancelSignal)}
+     *
+     * @param zipFile
+     * @param dstDir
+     * @param operation
+     * @param appender
+     * @return
+     * @throws IOException
+     */
+    public static List<File> unpack(File zipFile, File dstDir, @FileUtil.ConflictOperation int operation, AbsFileAppender appender) throws IOException {
+        return unpack(zipFile, dstDir, operation, appender, IOExecutor.getDefaultParallelism(), null, null);
+    }
+
+    /**
+     * 将zipFile解压到dstDir之中。
+     * <p>
+     * 先在当前线程遍历所有的压缩项目，检查路径并处理冲突，之后再由多个线程并发地解压文件，
+     * 每个线程使用各自的{@link ZipFile}读取数据。
+     * 冲突的处理与{@link FileUtil#copy(File, File[], int, AbsFileAppender)}一致，只作用于压缩包中的顶层项目，
+     * 比如使用{@link FileUtil#CONFLICT_OPERATION_APPEND_TAG}时会将整个顶层目录解压到新的名称之下。
+     * <p>
+     * 路径位于dstDir之外的压缩项目（比如“../a”）会导致抛出{@link ZipException}。
+     * 失败或者被取消时正在写入的文件会被删除，已经解压的文件会被保留。
+     *
+     * @param zipFile
+     * @param dstDir
+     * @param operation
+     * @param appender
+     * @param parallelism 同时解压的文件数的上限，小于等于1时在当前线程解压
+     * @param listener    进度回调，可以为null
+     * @param signal      取消信号，可以为null
+     * @return 解压得到的所有文件，不包括目录和被跳过的文件
+     * @throws ZipException        压缩包损坏或者压缩项目的路径不合法
+     * @throws FileExistsException
+     * @throws java.io.InterruptedIOException 操作被取消
+     * @throws IOException
+     */
+    public static List<File> unpack(File zipFile, File dstDir, @FileUtil.ConflictOperation int operation, AbsFileAppender appender,
+                                    int parallelism, @Nullable FileUtil.OnProgressListener listener, @Nullable CancelSignal signal) throws IOException {
+        Unpacker unpacker = new Unpacker(dstDir, operation, appender, listener, signal);
+        List<ZipEntry> fileEntries = new ArrayList<>();
+        List<File> targets = new ArrayList<>();
+
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            unpacker.beginBatch();
+            try {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                ZipEntry entry;
+                File target;
+                while (entries.hasMoreElements()) {
+                    entry = entries.nextElement();
+                    target = unpacker.resolve(entry);
+                    if (target != null && !entry.isDirectory()) {
+                        fileEntries.add(entry);
+                        targets.add(target);
+                    }
+                }
+            } finally {
+                unpacker.endBatch();
+            }
+
+            if (parallelism <= 1 || fileEntries.size() <= 1) {
+                for (int i = 0, len = fileEntries.size(); i < len; i++) {
+                    unpacker.extract(zip, fileEntries.get(i), targets.get(i));
+                }
+                return targets;
+            }
+        } finally {
+            close(zip);
+        }
+
+        // 多个线程从同一个队列中领取压缩项目
+        int count = fileEntries.size();
+        int workerCount = Math.min(parallelism, count);
+        AtomicInteger nextIndex = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            tasks.add(() -> {
+                ZipFile workerZip = new ZipFile(zipFile);
+                try {
+                    int idx;
+                    while ((idx = nextIndex.getAndIncrement()) < count) {
+                        unpacker.extract(workerZip, fileEntries.get(idx), targets.get(idx));
+                    }
+                } finally {
+                    close(workerZip);
+                }
+                return null;
+            });
+        }
+        IOExecutor.getShared().runAll(tasks);
+        return targets;
+    }
+
+    /**
+     * 从流中解压，适用于无法随机访问的压缩包，比如网络下载的数据。
+     * 由于只能顺序读取，解压总是在当前线程中进行，其余的规则与
+     * {@link #unpack(File, File, int, AbsFileAppender, int, FileUtil.OnProgressListener, CancelSignal)}一致。
+     * 结束后会关闭in。
+     *
+     * @param in
+     * @param dstDir
+     * @param operation
+     * @param appender
+     * @param listener  进度回调，可以为null
+     * @param signal    取消信号，可以为null
+     * @return 解压得到的所有文件，不包括目录和被跳过的文件
+     * @throws IOException
+     */
+    public static List<File> unpack(InputStream in, File dstDir, @FileUtil.ConflictOperation int operation, AbsFileAppender appender,
+                                    @Nullable FileUtil.OnProgressListener listener, @Nullable CancelSignal signal) throws IOException {
+        Unpacker unpacker = new Unpacker(dstDir, operation, appender, listener, signal);
+        List<File> targets = new ArrayList<>();
+        ZipInputStream zipIn = new ZipInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in));
+        unpacker.beginBatch();
+        try {
+            ZipEntry entry;
+            File target;
+            while ((entry = zipIn.getNextEntry()) != null) {
+                target = unpacker.resolve(entry);
+                if (target != null && !entry.isDirectory()) {
+                    unpacker.extract(zipIn, entry, target);
+                    targets.add(target);
+                }
+                zipIn.closeEntry();
+            }
+        } finally {
+            unpacker.endBatch();
+            IOUtil.close(zipIn);
+        }
+        return targets;
+    }
+
+    private static void close(ZipFile zip) {
+        try {
+            zip.close();
+        } catch (IOException e) {
+            LogUtil.e(e);
+        }
+    }
+
+    /**
+     * 解压的状态，负责检查路径、处理冲突以及写入文件
+     */
+    private static final class Unpacker {
+
+        private final File dstDir;
+        private final String dstPath;
+        @FileUtil.ConflictOperation
+        private final int operation;
+        private final AbsFileAppender appender;
+        private final FileUtil.OnProgressListener listener;
+        private final CancelSignal signal;
+
+        /**
+         * 顶层项目的名称到目标位置的映射，值为null时表示跳过
+         */
+        private final Map<String, File> topItems = new HashMap<>();
+        private final AtomicLong itemCount = new AtomicLong();
+        private final AtomicLong byteCount = new AtomicLong();
+
+        Unpacker(File dstDir, @FileUtil.ConflictOperation int operation, AbsFileAppender appender,
+                 @Nullable FileUtil.OnProgressListener listener, @Nullable CancelSignal signal) throws IOException {
+            dstDir.mkdirs();
+            if (!dstDir.isDirectory()) {
+                throw new FileNotFoundException("目标目录不可用");
+            }
+            this.dstDir = dstDir;
+            this.dstPath = dstDir.getCanonicalPath();
+            this.operation = operation;
+            this.appender = appender;
+            this.listener = listener;
+            this.signal = signal;
+        }
+
+        void beginBatch() {
+            if (appender != null) {
+                appender.beginBatch();
+            }
+        }
+
+        void endBatch() {
+            if (appender != null) {
+                appender.endBatch();
+            }
+        }
+
+        /**
+         * 获取压缩项目的目标位置，目录会被立刻创建
+         *
+         * @return 被跳过时返回null
+         */
+        @Nullable
+        File resolve(ZipEntry entry) throws IOException {
+            if (signal != null) {
+                signal.throwIfCancelled();
+            }
+
+            // 拒绝含有“.”和“..”等路径段的项目，冲突的处理依赖于名称中的第一段就是实际的顶层项目。
+            // 再以规范路径拒绝位于目标目录之外的项目，比如经由符号链接
+            String name = entry.getName();
+            if (!isPlainName(name)) {
+                throw new ZipException("压缩项目的路径不合法：" + name);
+            }
+            String path = new File(dstDir, name).getCanonicalPath();
+            if (!path.startsWith(dstPath) || path.length() <= dstPath.length()
+                    || path.charAt(dstPath.length()) != File.separatorChar) {
+                throw new ZipException("压缩项目的路径不合法：" + name);
+            }
+
+            int idx = name.indexOf('/');
+            String topName = idx == -1 ? name : name.substring(0, idx);
+            File topItem;
+            if (topItems.containsKey(topName)) {
+                topItem = topItems.get(topName);
+            } else {
+                topItem = resolveTopItem(topName, idx != -1);
+                topItems.put(topName, topItem);
+            }
+            if (topItem == null) {
+                return null;
+            }
+
+            File target = idx == -1 ? topItem : new File(topItem, name.substring(idx + 1));
+            if (entry.isDirectory()) {
+                target.mkdirs();
+                FileUtil.confirmDir(target);
+            }
+            return target;
+        }
+
+        /**
+         * @return 名称由“/”分隔的普通路径段组成时返回true，目录项目可以以“/”结尾
+         */
+        private boolean isPlainName(String name) {
+            int end = name.endsWith("/") ? name.length() - 1 : name.length();
+            if (end <= 0) {
+                return false;
+            }
+
+            int start = 0, idx;
+            String segment;
+            while (start <= end) {
+                idx = name.indexOf('/', start);
+                if (idx == -1 || idx > end) {
+                    idx = end;
+                }
+                segment = name.substring(start, idx);
+                if (segment.isEmpty() || segment.equals(".") || segment.equals("..")) {
+                    return false;
+                }
+                start = idx + 1;
+            }
+            return true;
+        }
+
+        /**
+         * 处理顶层项目的冲突。目标位置会被立刻创建，以免后续的顶层项目得到同样的位置。
+         */
+        @Nullable
+        private File resolveTopItem(String topName, boolean isDir) throws IOException {
+            File topItem = new File(dstDir, topName);
+            if (topItem.exists()) {
+                switch (operation) {
+                    case FileUtil.CONFLICT_OPERATION_TERMINATE:
+                        throw new FileExistsException("指定目录下存在同名项目");
+
+                    case FileUtil.CONFLICT_OPERATION_APPEND_TAG:
+                        topItem = isDir ? appender.nextDir(topItem) : appender.nextFile(topItem);
+                        break;
+
+                    case FileUtil.CONFLICT_OPERATION_COVER:// 文件覆盖，目录合并
+                        break;
+
+                    case FileUtil.CONFLICT_OPERATION_SKIP:
+                        return null;
+
+                    default:
+                        throw new IllegalArgumentException("指定操作模式不合法");
+                }
+            }
+
+            if (isDir) {
+                topItem.mkdirs();
+                FileUtil.confirmDir(topItem);
+            } else {
+                FileUtil.confirmFile(topItem);
+            }
+            return topItem;
+        }
+
+        void extract(ZipFile zip, ZipEntry entry, File target) throws IOException {
+            InputStream in = zip.getInputStream(entry);
+            try {
+                extract(in, entry, target);
+            } finally {
+                IOUtil.close(in);
+            }
+        }
+
+        /**
+         * 将当前压缩项目的数据写入target，不会关闭in
+         */
+        void extract(InputStream in, ZipEntry entry, File target) throws IOException {
+            File parent = target.getParentFile();
+            parent.mkdirs();
+            OutputStream out = new FileOutputStream(target);
+            byte[] buffer = BufferPool.acquireBytes(BufferPool.DEFAULT_BUFFER_SIZE);
+            long total = 0;
+            boolean success = false;
+            try {
+                int len;
+                while ((len = in.read(buffer)) != -1) {
+                    if (signal != null) {
+                        signal.throwIfCancelled();
+                    }
+                    out.write(buffer, 0, len);
+                    total += len;
+                }
+                out.close();
+                success = true;
+            } finally {
+                BufferPool.release(buffer);
+                if (!success) {
+                    IOUtil.close(out);
+                    target.delete();
+                }
+            }
+
+            if (entry.getTime() > 0) {
+                target.setLastModified(entry.getTime());
+            }
+            long items = itemCount.incrementAndGet();
+            long bytes = byteCount.addAndGet(total);
+            if (listener != null) {
+                listener.onProgress(items, bytes);
+            }
+        }
+    }
+}